@@ -0,0 +1,143 @@
+import benchmarks.Workloads;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Реализация Workloads для бенчмарков; находится в пакете по умолчанию, как и классы приложения
+ */
+public class BenchmarkWorkloads implements Workloads {
+    private static final PrintStream NULL_OUT = new PrintStream(OutputStream.nullOutputStream());
+
+    // без испорченных строк: бенчмарки разбора ожидают только правильные строки
+    private static LogGenerator generator(long seed) {
+        return new LogGenerator(seed).withMalformedRatio(0);
+    }
+
+    @Override
+    public List<String> sampleLines(int count, long seed) {
+        return generator(seed).lines(count);
+    }
+
+    @Override
+    public List<String> sampleUserAgents(int count, long seed) {
+        return generator(seed).userAgents(count);
+    }
+
+    @Override
+    public void generateLog(String path, long bytes, long seed) throws IOException {
+        generator(seed).withSize(bytes).writeTo(Paths.get(path));
+    }
+
+    @Override
+    public Object parseLine(String line) {
+        return new LogEntry(line);
+    }
+
+    private static final ThreadLocal<LogLineParser> PARSER = ThreadLocal.withInitial(LogLineParser::new);
+
+    @Override
+    public Object parseBytes(byte[] line) {
+        LogLineParser parser = PARSER.get();
+        if (!parser.parse(ByteBuffer.wrap(line), 0, line.length)) {
+            throw new IllegalArgumentException("Строка не соответствует формату лога");
+        }
+        return new LogEntry(parser);
+    }
+
+    @Override
+    public Object classifyUserAgent(String userAgent) {
+        return new UserAgent(userAgent);
+    }
+
+    @Override
+    public Object cachedUserAgent(String userAgent) {
+        return UserAgentCache.shared().get(userAgent);
+    }
+
+    @Override
+    public Object newStatistics(boolean approximate) {
+        return new Statistics(approximate ? StatisticsConfig.approximate(StatisticsConfig.DEFAULT_HLL_PRECISION)
+                : StatisticsConfig.exact());
+    }
+
+    @Override
+    public void addEntry(Object statistics, Object entry) {
+        ((Statistics) statistics).addEntry((LogEntry) entry);
+    }
+
+    @Override
+    public Object newConcurrentStatistics(boolean approximate, int stripes) {
+        return new ConcurrentStatistics(approximate ? StatisticsConfig.approximate(StatisticsConfig.DEFAULT_HLL_PRECISION)
+                : StatisticsConfig.exact(), stripes);
+    }
+
+    @Override
+    public void addConcurrentEntry(Object statistics, Object entry) {
+        ((ConcurrentStatistics) statistics).addEntry((LogEntry) entry);
+    }
+
+    @Override
+    public Function<Object, Object> reportGetter(String getter) {
+        // прямые вызовы, а не рефлексия, чтобы измерялся сам метод отчёта
+        switch (getter) {
+            case "getAverageVisitsPerHour":
+                return statistics -> ((Statistics) statistics).getAverageVisitsPerHour();
+            case "getAverageErrorRequestsPerHour":
+                return statistics -> ((Statistics) statistics).getAverageErrorRequestsPerHour();
+            case "getAverageVisitsPerUser":
+                return statistics -> ((Statistics) statistics).getAverageVisitsPerUser();
+            case "getTrafficRate":
+                return statistics -> ((Statistics) statistics).getTrafficRate();
+            case "getPeakVisitsPerSecond":
+                return statistics -> ((Statistics) statistics).getPeakVisitsPerSecond();
+            case "getMaxVisitsPerUser":
+                return statistics -> ((Statistics) statistics).getMaxVisitsPerUser();
+            case "getRefererDomainsCount":
+                return statistics -> ((Statistics) statistics).getRefererDomainsCount();
+            case "getBotStatistics":
+                return statistics -> ((Statistics) statistics).getBotStatistics();
+            case "getErrorStatistics":
+                return statistics -> ((Statistics) statistics).getErrorStatistics();
+            case "getVisitStatistics":
+                return statistics -> ((Statistics) statistics).getVisitStatistics();
+            case "getPeakVisitsStatistics":
+                return statistics -> ((Statistics) statistics).getPeakVisitsStatistics();
+            case "getRefererStatistics":
+                return statistics -> ((Statistics) statistics).getRefererStatistics();
+            case "getUserActivityStatistics":
+                return statistics -> ((Statistics) statistics).getUserActivityStatistics();
+            case "getTopStatistics":
+                return statistics -> ((Statistics) statistics).getTopStatistics();
+            case "getOsStatisticsAsString":
+                return statistics -> ((Statistics) statistics).getOsStatisticsAsString();
+            case "getBrowserStatisticsDetailedAsString":
+                return statistics -> ((Statistics) statistics).getBrowserStatisticsDetailedAsString();
+            case "getNonExistingPagesAsString":
+                return statistics -> ((Statistics) statistics).getNonExistingPagesAsString();
+            default:
+                throw new IllegalArgumentException("Нет метода отчёта " + getter);
+        }
+    }
+
+    @Override
+    public long analyze(String path, int threads) throws IOException {
+        return new ParallelLogAnalyzer(threads).analyze(Paths.get(path)).getTotalLines();
+    }
+
+    @Override
+    public void analyzeLogFile(String path) {
+        PrintStream out = System.out;
+        System.setOut(NULL_OUT);
+        try {
+            Main.analyzeLogFile(path);
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
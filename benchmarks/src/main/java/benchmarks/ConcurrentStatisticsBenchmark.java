@@ -0,0 +1,65 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность ConcurrentStatistics.addEntry, когда в одну статистику пишут несколько потоков.
+ * stripes = 1 соответствует Statistics под одним общим монитором
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ConcurrentStatisticsBenchmark {
+    private static final int ENTRIES = 65536;
+
+    @Param({"1", "8"})
+    public int stripes;
+
+    private Workloads workloads;
+    private Object[] entries;
+    private Object statistics;
+
+    @State(Scope.Thread)
+    public static class Position {
+        int index;
+    }
+
+    @Setup
+    public void setUp() {
+        workloads = Workloads.load();
+        List<String> lines = workloads.sampleLines(ENTRIES, 42);
+        entries = new Object[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            entries[i] = workloads.parseLine(lines.get(i));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void newStatistics() {
+        statistics = workloads.newConcurrentStatistics(false, stripes);
+    }
+
+    @Benchmark
+    public void addEntry(Position position) {
+        workloads.addConcurrentEntry(statistics, entries[position.index++ & (ENTRIES - 1)]);
+    }
+}
@@ -0,0 +1,86 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Анализ файла целиком. Счётчик megabytes показывает скорость в МБ/с (строка "megabytes" в результатах JMH).
+ * Файл генерируется при запуске; свой файл можно задать свойством -Dbenchmark.log=путь
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+    private static final long GENERATED_BYTES = 100L * 1024 * 1024;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Workloads workloads;
+    private Path file;
+    private boolean generated;
+    private double megabytes;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public double megabytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workloads = Workloads.load();
+        String configured = System.getProperty("benchmark.log");
+        if (configured != null) {
+            file = Path.of(configured);
+        } else {
+            file = Files.createTempFile("benchmark", ".log");
+            generated = true;
+            workloads.generateLog(file.toString(), GENERATED_BYTES, 42);
+        }
+        megabytes = Files.size(file) / 1048576.0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (generated) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Benchmark
+    public long analyze(Throughput throughput) throws IOException {
+        long lines = workloads.analyze(file.toString(), threads);
+        throughput.megabytes += megabytes;
+        return lines;
+    }
+
+    /**
+     * Main.analyzeLogFile: анализ на всех ядрах и построение отчёта (вывод отбрасывается)
+     */
+    @Benchmark
+    public void analyzeLogFile(Throughput throughput) {
+        workloads.analyzeLogFile(file.toString());
+        throughput.megabytes += megabytes;
+    }
+}
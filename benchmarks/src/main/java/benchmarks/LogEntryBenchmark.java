@@ -0,0 +1,55 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Создание LogEntry из правдоподобных строк: из String (публичный конструктор) и из байтов (путь чтения файла)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogEntryBenchmark {
+    private static final int LINES = 4096; // степень двойки для выбора строки по маске
+
+    private Workloads workloads;
+    private String[] lines;
+    private byte[][] bytes;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        workloads = Workloads.load();
+        List<String> sample = workloads.sampleLines(LINES, 42);
+        lines = sample.toArray(new String[0]);
+        bytes = new byte[LINES][];
+        for (int i = 0; i < LINES; i++) {
+            bytes[i] = lines[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public Object fromString() {
+        return workloads.parseLine(lines[index++ & (LINES - 1)]);
+    }
+
+    @Benchmark
+    public Object fromBytes() {
+        return workloads.parseBytes(bytes[index++ & (LINES - 1)]);
+    }
+}
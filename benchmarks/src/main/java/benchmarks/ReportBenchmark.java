@@ -0,0 +1,58 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Время построения каждой части отчёта по статистике из ENTRIES записей
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportBenchmark {
+    private static final int ENTRIES = 200_000;
+
+    @Param({
+            "getAverageVisitsPerHour", "getAverageErrorRequestsPerHour", "getAverageVisitsPerUser",
+            "getTrafficRate", "getPeakVisitsPerSecond", "getMaxVisitsPerUser", "getRefererDomainsCount",
+            "getBotStatistics", "getErrorStatistics", "getVisitStatistics", "getPeakVisitsStatistics",
+            "getRefererStatistics", "getUserActivityStatistics", "getTopStatistics",
+            "getOsStatisticsAsString", "getBrowserStatisticsDetailedAsString", "getNonExistingPagesAsString"
+    })
+    public String getter;
+
+    private Object statistics;
+    private Function<Object, Object> report;
+
+    @Setup
+    public void setUp() {
+        Workloads workloads = Workloads.load();
+        statistics = workloads.newStatistics(false);
+        List<String> lines = workloads.sampleLines(ENTRIES, 42);
+        for (String line : lines) {
+            workloads.addEntry(statistics, workloads.parseLine(line));
+        }
+        report = workloads.reportGetter(getter);
+    }
+
+    @Benchmark
+    public Object report() {
+        return report.apply(statistics);
+    }
+}
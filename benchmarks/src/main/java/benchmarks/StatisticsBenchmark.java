@@ -0,0 +1,59 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность Statistics.addEntry на заранее разобранных записях, в точном и приближённом режиме
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatisticsBenchmark {
+    private static final int ENTRIES = 65536;
+
+    @Param({"false", "true"})
+    public boolean approximate;
+
+    private Workloads workloads;
+    private Object[] entries;
+    private Object statistics;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        workloads = Workloads.load();
+        List<String> lines = workloads.sampleLines(ENTRIES, 42);
+        entries = new Object[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            entries[i] = workloads.parseLine(lines.get(i));
+        }
+    }
+
+    // новая статистика на каждой итерации, чтобы размер таблиц не рос без предела
+    @Setup(Level.Iteration)
+    public void newStatistics() {
+        statistics = workloads.newStatistics(approximate);
+    }
+
+    @Benchmark
+    public void addEntry() {
+        workloads.addEntry(statistics, entries[index++ & (ENTRIES - 1)]);
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Классификация User-Agent на смеси ботов и браузеров: полный разбор строки и получение через общий кэш
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserAgentBenchmark {
+    private static final int AGENTS = 1024;
+
+    private Workloads workloads;
+    private String[] agents;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        workloads = Workloads.load();
+        agents = workloads.sampleUserAgents(AGENTS, 42).toArray(new String[0]);
+    }
+
+    @Benchmark
+    public Object classify() {
+        return workloads.classifyUserAgent(agents[index++ & (AGENTS - 1)]);
+    }
+
+    @Benchmark
+    public Object cached() {
+        return workloads.cachedUserAgent(agents[index++ & (AGENTS - 1)]);
+    }
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Операции приложения, которые измеряют бенчмарки.
+ * Классы приложения лежат в пакете по умолчанию, а JMH не работает с бенчмарками в пакете по умолчанию,
+ * поэтому бенчмарки обращаются к приложению через этот интерфейс. Реализация BenchmarkWorkloads
+ * находится в пакете по умолчанию и загружается один раз; вызов через интерфейс с единственной
+ * реализацией JIT встраивает, так что на результаты он не влияет.
+ */
+public interface Workloads {
+
+    static Workloads load() {
+        try {
+            return (Workloads) Class.forName("BenchmarkWorkloads").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Не найдена реализация BenchmarkWorkloads", e);
+        }
+    }
+
+    /**
+     * Строки лога от LogGenerator: распределение Ципфа, смесь браузеров и ботов, IPv4 и IPv6, разные коды ответа
+     */
+    List<String> sampleLines(int count, long seed);
+
+    /**
+     * Строки User-Agent от LogGenerator: около трети ботов, остальное - браузеры и утилиты
+     */
+    List<String> sampleUserAgents(int count, long seed);
+
+    /**
+     * Файл лога примерно в bytes байт от LogGenerator
+     */
+    void generateLog(String path, long bytes, long seed) throws IOException;
+
+    Object parseLine(String line);
+
+    /**
+     * Разбор строки из байтов, как при чтении файла (без промежуточной строки)
+     */
+    Object parseBytes(byte[] line);
+
+    /**
+     * Классификация User-Agent без кэша
+     */
+    Object classifyUserAgent(String userAgent);
+
+    /**
+     * User-Agent через общий кэш, как при разборе лога
+     */
+    Object cachedUserAgent(String userAgent);
+
+    Object newStatistics(boolean approximate);
+
+    void addEntry(Object statistics, Object entry);
+
+    /**
+     * ConcurrentStatistics с заданным количеством полос; одна полоса - общий монитор на все потоки
+     */
+    Object newConcurrentStatistics(boolean approximate, int stripes);
+
+    void addConcurrentEntry(Object statistics, Object entry);
+
+    /**
+     * Метод отчёта Statistics по имени (например, getTopStatistics) в виде функции от статистики
+     */
+    Function<Object, Object> reportGetter(String getter);
+
+    /**
+     * Анализ файла без вывода отчёта, возвращает количество строк
+     */
+    long analyze(String path, int threads) throws IOException;
+
+    /**
+     * Main.analyzeLogFile с выводом отчёта в пустой поток
+     */
+    void analyzeLogFile(String path);
+}
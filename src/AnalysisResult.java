@@ -0,0 +1,40 @@
+/**
+ * Результат анализа файла или его фрагмента: статистика, количество прочитанных строк
+ * и количество отвергнутых строк по причинам
+ */
+public class AnalysisResult {
+    private final Statistics statistics;
+    private long totalLines;
+    private final ParseFailures failures;
+
+    public AnalysisResult(Statistics statistics, long totalLines) {
+        this(statistics, totalLines, new ParseFailures());
+    }
+
+    public AnalysisResult(Statistics statistics, long totalLines, ParseFailures failures) {
+        this.statistics = statistics;
+        this.totalLines = totalLines;
+        this.failures = failures;
+    }
+
+    /**
+     * Объединяет с результатом по другому фрагменту
+     */
+    public void merge(AnalysisResult other) {
+        statistics.merge(other.statistics);
+        totalLines += other.totalLines;
+        failures.merge(other.failures);
+    }
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    public long getTotalLines() {
+        return totalLines;
+    }
+
+    public ParseFailures getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Пакетный анализ нескольких файлов: файлы обрабатываются одновременно (не больше threads сразу),
+ * частичные статистики объединяются в общий результат в порядке файлов,
+ * для каждого файла запоминаются время обработки и скорость.
+ * Если задана папка контрольных точек, для каждого файла (кроме .gz) в ней хранится Checkpoint,
+ * и при повторном запуске разбирается только дописанная часть файла.
+ */
+public class BatchAnalyzer {
+    private final int threads;
+    private final StatisticsConfig config;
+    private final Path checkpointDirectory; // null - без контрольных точек
+
+    public BatchAnalyzer(int threads, StatisticsConfig config) {
+        this(threads, config, null);
+    }
+
+    public BatchAnalyzer(int threads, StatisticsConfig config, Path checkpointDirectory) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть положительным: " + threads);
+        }
+        this.threads = threads;
+        this.config = config;
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
+    /**
+     * Файл контрольной точки для лога: имя лога и хеш полного пути, чтобы одноимённые файлы из разных папок не смешивались
+     */
+    public static Path checkpointFile(Path directory, Path file) {
+        String absolute = file.toAbsolutePath().normalize().toString();
+        return directory.resolve(String.format("%s-%016x.checkpoint", file.getFileName(), HyperLogLog.hash64(absolute)));
+    }
+
+    /**
+     * Раскрывает аргументы в список файлов: файл берётся как есть, папка - все файлы в ней и во вложенных папках,
+     * шаблон (*, ?, [, {) - файлы, путь которых ему соответствует. Порядок - как в аргументах, внутри папки - по имени.
+     * Несуществующий путь остаётся в списке: analyze сообщит о нём как об ошибке файла, не прерывая остальные.
+     */
+    public static List<Path> expand(List<String> arguments) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String argument : arguments) {
+            if (isGlob(argument)) {
+                files.addAll(matchGlob(argument));
+                continue;
+            }
+            Path path = Paths.get(argument);
+            if (Files.isDirectory(path)) {
+                files.addAll(listFiles(path, file -> true));
+            } else {
+                files.add(path);
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Анализирует файлы; ошибка в одном файле не прерывает обработку остальных
+     */
+    public BatchResult analyze(List<Path> files) throws IOException {
+        // потоки делятся между файлами, обрабатываемыми одновременно
+        int filesAtOnce = Math.max(1, Math.min(threads, files.size()));
+        int threadsPerFile = Math.max(1, threads / filesAtOnce);
+        ExecutorService executor = Executors.newFixedThreadPool(filesAtOnce);
+        long start = System.nanoTime();
+        try {
+            List<Future<FileAnalysis>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(executor.submit(() -> analyzeFile(file, threadsPerFile)));
+            }
+            AnalysisResult total = new AnalysisResult(new Statistics(config), 0);
+            List<FileResult> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                FileAnalysis analysis = futures.get(i).get();
+                futures.set(i, null); // статистика файла больше не нужна после объединения
+                results.add(analysis.file);
+                if (analysis.result != null) {
+                    total.merge(analysis.result);
+                }
+            }
+            return new BatchResult(total, results, (System.nanoTime() - start) / 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Анализ прерван", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private FileAnalysis analyzeFile(Path file, int fileThreads) {
+        long start = System.nanoTime();
+        long bytes = 0;
+        try {
+            if (!Files.exists(file)) {
+                throw new IOException("Файл не существует: " + file);
+            }
+            bytes = Files.size(file);
+            ParallelLogAnalyzer analyzer = new ParallelLogAnalyzer(fileThreads, config);
+            AnalysisResult result = checkpointDirectory != null && !GzipLogReader.isGzip(file)
+                    ? analyzer.analyze(file, checkpointFile(checkpointDirectory, file))
+                    : analyzer.analyze(file);
+            return new FileAnalysis(new FileResult(file, bytes, (System.nanoTime() - start) / 1_000_000,
+                    result.getTotalLines(), result.getStatistics().getEntryCount(), null), result);
+        } catch (IOException | RuntimeException e) {
+            return new FileAnalysis(new FileResult(file, bytes, (System.nanoTime() - start) / 1_000_000, 0, 0,
+                    e.toString()), null);
+        }
+    }
+
+    // итог файла и его статистика до объединения с общей
+    private static final class FileAnalysis {
+        private final FileResult file;
+        private final AnalysisResult result;
+
+        FileAnalysis(FileResult file, AnalysisResult result) {
+            this.file = file;
+            this.result = result;
+        }
+    }
+
+    private static boolean isGlob(String argument) {
+        return argument.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+    }
+
+    // поиск начинается с самой длинной папки без символов шаблона
+    private static List<Path> matchGlob(String pattern) throws IOException {
+        int cut = pattern.lastIndexOf('/', firstGlobChar(pattern));
+        Path base = Paths.get(cut < 0 ? "." : cut == 0 ? "/" : pattern.substring(0, cut));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        // при поиске от "." пути имеют вид ./a.log, поэтому проверяется и нормализованный путь
+        return listFiles(base, file -> matcher.matches(file) || matcher.matches(file.normalize()));
+    }
+
+    private static int firstGlobChar(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return pattern.length();
+    }
+
+    private static List<Path> listFiles(Path directory, Predicate<Path> filter) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> stream = Files.walk(directory)) {
+            return stream.filter(Files::isRegularFile).filter(filter).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Итог обработки одного файла; при ошибке error - описание ошибки, а строк и записей 0.
+     * Статистика файла не хранится: она объединяется с общей (BatchResult.getTotal)
+     */
+    public static class FileResult {
+        private final Path path;
+        private final long bytes;
+        private final long millis;
+        private final long lines;
+        private final long entries;
+        private final String error;
+
+        FileResult(Path path, long bytes, long millis, long lines, long entries, String error) {
+            this.path = path;
+            this.bytes = bytes;
+            this.millis = millis;
+            this.lines = lines;
+            this.entries = entries;
+            this.error = error;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Скорость чтения файла (размер на диске, для .gz - сжатый) в МБ/с
+         */
+        public double getMegabytesPerSecond() {
+            return millis > 0 ? bytes / 1048576.0 / (millis / 1000.0) : 0;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public long getEntries() {
+            return entries;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Общий результат пакета: объединённая статистика и итоги по файлам
+     */
+    public static class BatchResult {
+        private final AnalysisResult total;
+        private final List<FileResult> files;
+        private final long millis;
+
+        BatchResult(AnalysisResult total, List<FileResult> files, long millis) {
+            this.total = total;
+            this.files = files;
+            this.millis = millis;
+        }
+
+        public AnalysisResult getTotal() {
+            return total;
+        }
+
+        public List<FileResult> getFiles() {
+            return files;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Контрольная точка анализа: состояние Statistics, количество строк и позиция в файле,
+ * до которой обработаны все строки, вместе с признаками файла. Повторный запуск по той же точке
+ * разбирает только байты после offset, например дописанный хвост лога или остаток прерванного анализа.
+ * Файл считается тем же, если он не короче offset и совпадают хеши его начала и последних байтов
+ * перед offset; inode сохраняется для сведения (копия файла на другой диск тоже подходит).
+ * Формат двоичный, версионированный, пишется и читается потоком через DataOutput/DataInput:
+ * заголовок (сигнатура, версия), признаки файла, количество строк и ошибок разбора, настройки статистики,
+ * состояние Statistics и CRC32C всего содержимого.
+ * Запись идёт во временный файл, который затем атомарно заменяет прежнюю точку.
+ */
+public class Checkpoint {
+    private static final int MAGIC = 0x414C5043; // "ALPC"
+    // 2 - добавлены ошибки разбора по причинам, 3 - гистограммы и 64-битный трафик, 4 - имена хостов текстом,
+    // 5 - обрезанные строки отдельно от ошибок, 6 - типы клиентов массивом
+    static final int VERSION = 6;
+    private static final int HEAD_BYTES = 64 * 1024; // хешируется начало файла
+    private static final int TAIL_BYTES = 4096; // и последние байты перед offset
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final String fileKey;
+    private final long offset;
+    private final long headHash;
+    private final long tailHash;
+    private final AnalysisResult result;
+
+    private Checkpoint(String fileKey, long offset, long headHash, long tailHash, AnalysisResult result) {
+        this.fileKey = fileKey;
+        this.offset = offset;
+        this.headHash = headHash;
+        this.tailHash = tailHash;
+        this.result = result;
+    }
+
+    /**
+     * Контрольная точка для файла path, все строки которого до offset учтены в result
+     */
+    public static Checkpoint create(Path path, FileChannel channel, long offset, AnalysisResult result)
+            throws IOException {
+        return new Checkpoint(LogFollower.fileKey(path).toString(), offset, headHash(channel, offset),
+                tailHash(channel, offset), result);
+    }
+
+    public void save(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temporary)) {
+                CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE),
+                        new CRC32C());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(fileKey);
+                out.writeLong(offset);
+                out.writeLong(headHash);
+                out.writeLong(tailHash);
+                out.writeLong(result.getTotalLines());
+                result.getFailures().writeTo(out);
+                StatisticsConfig config = result.getStatistics().getConfig();
+                out.writeBoolean(config.isApproximate());
+                out.writeInt(config.getHllPrecision());
+                out.writeInt(TopDimension.values().length);
+                for (TopDimension dimension : TopDimension.values()) {
+                    out.writeInt(config.getTopK(dimension));
+                }
+                result.getStatistics().writeTo(out);
+                out.flush();
+                // контрольная сумма всего, что записано выше
+                new DataOutputStream(stream).writeInt((int) checked.getChecksum().getValue());
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Читает контрольную точку; повреждённый файл или файл другой версии - IOException
+     */
+    public static Checkpoint load(Path file) throws IOException {
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            CheckedInputStream checked = new CheckedInputStream(stream, new CRC32C());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Файл не является контрольной точкой: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия контрольной точки: " + version + " (ожидается " + VERSION + ")");
+            }
+            String fileKey = in.readUTF();
+            long offset = in.readLong();
+            long headHash = in.readLong();
+            long tailHash = in.readLong();
+            long totalLines = in.readLong();
+            ParseFailures failures = ParseFailures.readFrom(in);
+            boolean approximate = in.readBoolean();
+            int precision = in.readInt();
+            StatisticsConfig config = approximate ? StatisticsConfig.approximate(precision) : StatisticsConfig.exact();
+            if (in.readInt() != TopDimension.values().length) {
+                throw new IOException("Контрольная точка записана с другим набором измерений");
+            }
+            for (TopDimension dimension : TopDimension.values()) {
+                config = config.withTopK(dimension, in.readInt());
+            }
+            Statistics statistics = Statistics.readFrom(in, config);
+            int expected = (int) checked.getChecksum().getValue();
+            if (new DataInputStream(stream).readInt() != expected) {
+                throw new IOException("Не совпадает контрольная сумма контрольной точки: " + file);
+            }
+            return new Checkpoint(fileKey, offset, headHash, tailHash, new AnalysisResult(statistics, totalLines, failures));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Повреждённая контрольная точка: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Причина, по которой точку нельзя продолжить на открытом файле с настройками config, или null, если можно
+     */
+    public String mismatch(FileChannel channel, StatisticsConfig config) throws IOException {
+        if (!result.getStatistics().getConfig().equals(config)) {
+            return "другие настройки статистики";
+        }
+        if (channel.size() < offset) {
+            return "файл короче обработанной части";
+        }
+        if (headHash(channel, offset) != headHash || tailHash(channel, offset) != tailHash) {
+            return "содержимое файла изменилось";
+        }
+        return null;
+    }
+
+    public String getFileKey() {
+        return fileKey;
+    }
+
+    /**
+     * Позиция сразу после последней учтённой строки
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public AnalysisResult getResult() {
+        return result;
+    }
+
+    private static long headHash(FileChannel channel, long offset) throws IOException {
+        return hash(channel, 0, Math.min(HEAD_BYTES, offset));
+    }
+
+    private static long tailHash(FileChannel channel, long offset) throws IOException {
+        return hash(channel, Math.max(0, offset - TAIL_BYTES), offset);
+    }
+
+    private static long hash(FileChannel channel, long from, long to) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, from + buffer.position()) < 0) {
+                return -1; // файл короче, чем нужно
+            }
+        }
+        crc.update(buffer.flip());
+        return crc.getValue();
+    }
+}
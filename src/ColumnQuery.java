@@ -0,0 +1,90 @@
+/**
+ * Фильтр запроса к ColumnStoreReader: интервал времени [from, to), диапазон кодов ответа и путь.
+ * Объект неизменяемый, условия добавляются методами with... (каждый возвращает копию).
+ */
+public class ColumnQuery {
+    private static final ColumnQuery ALL = new ColumnQuery(Long.MIN_VALUE, Long.MAX_VALUE, 0, Integer.MAX_VALUE, null);
+
+    private final long fromEpochSecond;
+    private final long toEpochSecond;
+    private final int minStatus;
+    private final int maxStatus;
+    private final String path;
+
+    private ColumnQuery(long fromEpochSecond, long toEpochSecond, int minStatus, int maxStatus, String path) {
+        this.fromEpochSecond = fromEpochSecond;
+        this.toEpochSecond = toEpochSecond;
+        this.minStatus = minStatus;
+        this.maxStatus = maxStatus;
+        this.path = path;
+    }
+
+    /**
+     * Запрос без условий: все записи хранилища
+     */
+    public static ColumnQuery all() {
+        return ALL;
+    }
+
+    /**
+     * Записи со временем в [fromEpochSecond, toEpochSecond)
+     */
+    public ColumnQuery withTimeRange(long fromEpochSecond, long toEpochSecond) {
+        if (toEpochSecond < fromEpochSecond) {
+            throw new IllegalArgumentException("Конец интервала раньше начала: " + fromEpochSecond + " > " + toEpochSecond);
+        }
+        return new ColumnQuery(fromEpochSecond, toEpochSecond, minStatus, maxStatus, path);
+    }
+
+    /**
+     * Записи с кодом ответа от minStatus до maxStatus включительно
+     */
+    public ColumnQuery withStatusRange(int minStatus, int maxStatus) {
+        if (minStatus < 0 || maxStatus < minStatus) {
+            throw new IllegalArgumentException("Некорректный диапазон кодов ответа: " + minStatus + "-" + maxStatus);
+        }
+        return new ColumnQuery(fromEpochSecond, toEpochSecond, minStatus, maxStatus, path);
+    }
+
+    /**
+     * Записи с точно таким путём; null - любой путь
+     */
+    public ColumnQuery withPath(String path) {
+        return new ColumnQuery(fromEpochSecond, toEpochSecond, minStatus, maxStatus, path);
+    }
+
+    public long getFromEpochSecond() {
+        return fromEpochSecond;
+    }
+
+    public long getToEpochSecond() {
+        return toEpochSecond;
+    }
+
+    public int getMinStatus() {
+        return minStatus;
+    }
+
+    public int getMaxStatus() {
+        return maxStatus;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    boolean hasTimeFilter() {
+        return fromEpochSecond != Long.MIN_VALUE || toEpochSecond != Long.MAX_VALUE;
+    }
+
+    boolean hasStatusFilter() {
+        return minStatus != 0 || maxStatus != Integer.MAX_VALUE;
+    }
+
+    /**
+     * Запрос без условий, т.е. выбирает все записи
+     */
+    boolean isAll() {
+        return !hasTimeFilter() && !hasStatusFilter() && path == null;
+    }
+}
@@ -0,0 +1,361 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Столбцовое хранилище разобранного лога: однажды разобранный текст сохраняется в папку,
+ * и повторные запросы (ColumnStoreReader) читают только нужные столбцы, без разбора строк.
+ * Каждый столбец - отдельный файл из блоков по BLOCK_ROWS строк:
+ * время - разности соседних значений в zigzag varint, смещение часового пояса - так же,
+ * метод - байт, код ответа - байт (номер в таблице кодов), размер ответа - varint,
+ * IP, путь, referer и User-Agent - varint-номера в словарях хранилища (файлы .dict;
+ * адреса-имена хостов записываются в словарь IP текстом, см. IpAddress.writeTo).
+ * Кодирование каждого блока начинается заново, поэтому блоки читаются независимо.
+ * В meta.bin для каждого блока и столбца записаны позиция в файле столбца и минимум/максимум
+ * значений (для времени - секунды, для кода - сам код, для словарных столбцов - номера),
+ * что позволяет пропускать блоки, заведомо не подходящие под фильтр.
+ */
+public class ColumnStore {
+    static final int MAGIC = 0x414C5053; // "ALPS"
+    static final int VERSION = 2; // 2 - имена хостов в словаре IP текстом
+    static final int BLOCK_ROWS = 64 * 1024;
+    static final String META_FILE = "meta.bin";
+    static final int NO_REFERER = 0; // в столбце referer номера сдвинуты на 1, 0 - referer не указан
+
+    /**
+     * Столбцы хранилища в порядке записи в meta.bin
+     */
+    enum Column {
+        TIME("time"), OFFSET("offset"), METHOD("method"), STATUS("status"), SIZE("size"),
+        IP("ip"), PATH("path"), REFERER("referer"), USER_AGENT("agent");
+
+        private final String name;
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        String fileName() {
+            return name + ".col";
+        }
+
+        String dictionaryFileName() {
+            return name + ".dict";
+        }
+    }
+
+    private ColumnStore() {
+    }
+
+    public static long build(Path log, Path directory) throws IOException {
+        return build(log, directory, new ParseFailures());
+    }
+
+    /**
+     * Разбирает лог и записывает хранилище в папку directory (папка создаётся, прежние файлы заменяются).
+     * Строки, не соответствующие формату, и записи с кодом ответа, который не помещается в столбец
+     * (BAD_STATUS), пропускаются и учитываются в failures и Quarantine (см. ParsingLineHandler),
+     * но входят в количество строк. Возвращает количество записанных записей.
+     */
+    public static long build(Path log, Path directory, ParseFailures failures) throws IOException {
+        Files.createDirectories(directory);
+        // прежнее хранилище становится неполным до конца записи
+        Files.deleteIfExists(directory.resolve(META_FILE));
+        try (Writer writer = new Writer(directory)) {
+            long lines = new MappedLogReader(log).read(new ParsingLineHandler(new LogLineParser(), writer, failures,
+                    Quarantine.shared(), LongLinePolicy.fromSystemProperties(), log.toString(), 0));
+            writer.finish(lines);
+            return writer.rows;
+        }
+    }
+
+    /**
+     * Построчная запись столбцов; блок копится в памяти и дописывается в файлы столбцов целиком
+     */
+    private static final class Writer implements ParsingLineHandler.Sink, AutoCloseable {
+        private final Path directory;
+        private final Map<Column, OutputStream> files = new EnumMap<>(Column.class);
+        private final Map<Column, ColumnBuffer> buffers = new EnumMap<>(Column.class);
+        private final Map<Column, Long> fileOffsets = new EnumMap<>(Column.class);
+        private final List<long[]> blockIndex = new ArrayList<>(); // на блок: строки, затем (позиция, мин, макс) по столбцам
+
+        // словари хранилища; строки, получившие номер в StringDictionary, ищутся по этому номеру
+        private final IpCountMap ipIds = new IpCountMap(); // адрес -> номер + 1
+        private final List<long[]> ips = new ArrayList<>();
+        private final LocalDictionary paths = new LocalDictionary(StringDictionary.paths());
+        private final LocalDictionary referers = new LocalDictionary(StringDictionary.referers());
+        private final LocalDictionary userAgents = new LocalDictionary(StringDictionary.userAgents());
+        private final int[] statusIndex = new int[1000]; // код ответа -> номер + 1
+        private final List<Integer> statuses = new ArrayList<>();
+
+        private long rows;
+        private int blockRows;
+        private long previousTime;
+        private int previousOffset;
+
+        Writer(Path directory) throws IOException {
+            this.directory = directory;
+            for (Column column : Column.values()) {
+                files.put(column, new BufferedOutputStream(Files.newOutputStream(directory.resolve(column.fileName())),
+                        1 << 16));
+                buffers.put(column, new ColumnBuffer());
+                fileOffsets.put(column, 0L);
+            }
+        }
+
+        // код ответа вне 0..999 или 257-й различный код не помещается в байт столбца
+        @Override
+        public ParseResult check(LogLineParser parser) {
+            int code = parser.getResponseCode();
+            return code >= 0 && code < statusIndex.length && (statusIndex[code] != 0 || statuses.size() < 256)
+                    ? ParseResult.OK : ParseResult.BAD_STATUS;
+        }
+
+        @Override
+        public void accept(LogLineParser parser) {
+            try {
+                add(parser);
+            } catch (IOException e) {
+                throw new IllegalStateException("Ошибка записи хранилища: " + e.getMessage(), e);
+            }
+        }
+
+        // код ответа уже проверен в check
+        private void add(LogLineParser parser) throws IOException {
+            int code = parser.getResponseCode();
+            if (statusIndex[code] == 0) {
+                statuses.add(code);
+                statusIndex[code] = statuses.size();
+            }
+            long time = parser.getEpochSecond();
+            int offset = parser.getOffsetSeconds();
+            buffers.get(Column.TIME).putSigned(time - previousTime, time);
+            buffers.get(Column.OFFSET).putSigned(offset - previousOffset, offset);
+            previousTime = time;
+            previousOffset = offset;
+            buffers.get(Column.METHOD).putByte(parser.getMethod().ordinal());
+            buffers.get(Column.STATUS).putByte(statusIndex[code] - 1, code);
+            buffers.get(Column.SIZE).putUnsigned(parser.getDataSize());
+
+            long high = parser.getIpHigh();
+            long low = parser.getIpLow();
+            int ip = ipIds.get(high, low);
+            if (ip == 0) {
+                ips.add(new long[]{high, low});
+                ip = ipIds.increment(high, low, ips.size());
+            }
+            buffers.get(Column.IP).putUnsigned(ip - 1);
+            buffers.get(Column.PATH).putUnsigned(paths.id(parser.getPathId(StringDictionary.paths()), parser::getPath));
+            int refererId = parser.getRefererId(StringDictionary.referers());
+            String referer = refererId == StringDictionary.NO_ID ? parser.getReferer() : null;
+            buffers.get(Column.REFERER).putUnsigned(refererId == StringDictionary.NO_ID && referer == null
+                    ? NO_REFERER : referers.id(refererId, () -> referer) + 1);
+            buffers.get(Column.USER_AGENT).putUnsigned(
+                    userAgents.id(parser.getUserAgentId(StringDictionary.userAgents()), parser::getUserAgent));
+            rows++;
+            if (++blockRows == BLOCK_ROWS) {
+                flushBlock();
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (blockRows == 0) {
+                return;
+            }
+            long[] entry = new long[1 + Column.values().length * 3];
+            entry[0] = blockRows;
+            for (Column column : Column.values()) {
+                ColumnBuffer buffer = buffers.get(column);
+                int base = 1 + column.ordinal() * 3;
+                entry[base] = fileOffsets.get(column);
+                entry[base + 1] = buffer.min;
+                entry[base + 2] = buffer.max;
+                files.get(column).write(buffer.data, 0, buffer.length);
+                fileOffsets.put(column, fileOffsets.get(column) + buffer.length);
+                buffer.clear();
+            }
+            blockIndex.add(entry);
+            blockRows = 0;
+            previousTime = 0;
+            previousOffset = 0;
+        }
+
+        void finish(long sourceLines) throws IOException {
+            flushBlock();
+            for (OutputStream file : files.values()) {
+                file.flush();
+            }
+            try (DataOutputStream out = dataFile(Column.IP.dictionaryFileName())) {
+                out.writeInt(ips.size());
+                for (long[] ip : ips) {
+                    IpAddress.writeTo(out, ip[0], ip[1]);
+                }
+            }
+            paths.writeTo(dataFile(Column.PATH.dictionaryFileName()));
+            referers.writeTo(dataFile(Column.REFERER.dictionaryFileName()));
+            userAgents.writeTo(dataFile(Column.USER_AGENT.dictionaryFileName()));
+            // meta.bin пишется последним: хранилище без него неполное и не открывается
+            try (DataOutputStream out = dataFile(META_FILE)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(sourceLines);
+                out.writeLong(rows);
+                out.writeInt(BLOCK_ROWS);
+                out.writeInt(statuses.size());
+                for (int status : statuses) {
+                    out.writeShort(status);
+                }
+                out.writeInt(Column.values().length);
+                for (Column column : Column.values()) {
+                    out.writeLong(fileOffsets.get(column)); // длина файла столбца
+                }
+                out.writeInt(blockIndex.size());
+                for (long[] entry : blockIndex) {
+                    for (long value : entry) {
+                        out.writeLong(value);
+                    }
+                }
+            }
+        }
+
+        private DataOutputStream dataFile(String name) throws IOException {
+            return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(name)), 1 << 16));
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (OutputStream file : files.values()) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Словарь столбца: номера выдаются по порядку появления значений.
+     * Значение с номером в общем StringDictionary ищется по этому номеру без создания строки.
+     */
+    private static final class LocalDictionary {
+        private final StringDictionary shared;
+        private int[] bySharedId = new int[1024]; // номер в StringDictionary -> номер + 1
+        private final Map<String, Integer> byValue = new HashMap<>(); // значения без номера в StringDictionary
+        private final List<String> values = new ArrayList<>();
+
+        LocalDictionary(StringDictionary shared) {
+            this.shared = shared;
+        }
+
+        int id(int sharedId, java.util.function.Supplier<String> value) {
+            if (sharedId != StringDictionary.NO_ID) {
+                if (sharedId >= bySharedId.length) {
+                    bySharedId = Arrays.copyOf(bySharedId, Math.max(sharedId + 1, bySharedId.length * 2));
+                }
+                if (bySharedId[sharedId] == 0) {
+                    bySharedId[sharedId] = add(shared.get(sharedId)) + 1;
+                }
+                return bySharedId[sharedId] - 1;
+            }
+            String text = value.get();
+            Integer id = byValue.get(text);
+            return id != null ? id : add(text);
+        }
+
+        private int add(String value) {
+            Integer existing = byValue.get(value);
+            if (existing != null) {
+                return existing;
+            }
+            values.add(value);
+            byValue.put(value, values.size() - 1);
+            return values.size() - 1;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            try (out) {
+                out.writeInt(values.size());
+                for (String value : values) {
+                    out.writeUTF(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Байты блока одного столбца и минимум/максимум его значений
+     */
+    private static final class ColumnBuffer {
+        private byte[] data = new byte[BLOCK_ROWS * 2];
+        private int length;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        void putByte(int value) {
+            putByte(value, value);
+        }
+
+        // value - закодированный байт, statValue - значение для минимума/максимума
+        void putByte(int value, long statValue) {
+            ensure(1);
+            data[length++] = (byte) value;
+            track(statValue);
+        }
+
+        void putUnsigned(long value) {
+            ensure(10);
+            writeVarint(value);
+            track(value);
+        }
+
+        // разность со знаком (zigzag), статистика - по самому значению
+        void putSigned(long delta, long statValue) {
+            ensure(10);
+            writeVarint((delta << 1) ^ (delta >> 63));
+            track(statValue);
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+
+        private void track(long value) {
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+        }
+
+        private void ensure(int bytes) {
+            if (length + bytes > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+        }
+
+        void clear() {
+            length = 0;
+            min = Long.MAX_VALUE;
+            max = Long.MIN_VALUE;
+        }
+    }
+}
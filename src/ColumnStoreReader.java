@@ -0,0 +1,541 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Чтение хранилища ColumnStore. Файлы столбцов отображаются в память только для чтения;
+ * запрос (ColumnQuery) пропускает блоки по минимуму/максимуму из meta.bin
+ * и декодирует только столбцы, нужные для условия и результата:
+ * count - столбцы условий, sumBytes - ещё размер, topPaths - путь, toStatistics - все.
+ */
+public class ColumnStoreReader {
+    private static final long SEGMENT_SIZE = 1L << 30; // файл столбца отображается частями до 1 ГБ по границам блоков
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    private final Path directory;
+    private final long sourceLines;
+    private final long rows;
+    private final int blockRows;
+    private final int[] statuses; // номер в столбце кода ответа -> код
+    private final List<Block> blocks = new ArrayList<>();
+    private String[] paths;
+    private Map<String, Integer> pathIds;
+
+    private ColumnStoreReader(Path directory, long sourceLines, long rows, int blockRows, int[] statuses) {
+        this.directory = directory;
+        this.sourceLines = sourceLines;
+        this.rows = rows;
+        this.blockRows = blockRows;
+        this.statuses = statuses;
+    }
+
+    /**
+     * Открывает хранилище в папке directory; неполное или повреждённое хранилище - IOException
+     */
+    public static ColumnStoreReader open(Path directory) throws IOException {
+        ColumnStore.Column[] columns = ColumnStore.Column.values();
+        ColumnStoreReader reader;
+        long[][] index;
+        long[] lengths = new long[columns.length];
+        try (DataInputStream in = dataFile(directory.resolve(ColumnStore.META_FILE))) {
+            if (in.readInt() != ColumnStore.MAGIC) {
+                throw new IOException("Папка не содержит хранилища: " + directory);
+            }
+            int version = in.readInt();
+            if (version != ColumnStore.VERSION) {
+                throw new IOException("Неподдерживаемая версия хранилища: " + version
+                        + " (ожидается " + ColumnStore.VERSION + ")");
+            }
+            long sourceLines = in.readLong();
+            long rows = in.readLong();
+            int blockRows = in.readInt();
+            int[] statuses = new int[in.readInt()];
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = in.readShort();
+            }
+            if (in.readInt() != columns.length) {
+                throw new IOException("Хранилище записано с другим набором столбцов");
+            }
+            for (int i = 0; i < columns.length; i++) {
+                lengths[i] = in.readLong();
+            }
+            index = new long[in.readInt()][1 + columns.length * 3];
+            for (long[] entry : index) {
+                for (int i = 0; i < entry.length; i++) {
+                    entry[i] = in.readLong();
+                }
+            }
+            reader = new ColumnStoreReader(directory, sourceLines, rows, blockRows, statuses);
+        } catch (NoSuchFileException e) {
+            throw new IOException("Папка не содержит хранилища: " + directory, e);
+        }
+        for (long[] entry : index) {
+            reader.blocks.add(new Block((int) entry[0], columns.length));
+        }
+        for (ColumnStore.Column column : columns) {
+            reader.map(column, index, lengths[column.ordinal()]);
+        }
+        return reader;
+    }
+
+    // отображает файл столбца частями, каждая часть - целое число блоков
+    private void map(ColumnStore.Column column, long[][] index, long length) throws IOException {
+        int base = 1 + column.ordinal() * 3;
+        try (FileChannel channel = FileChannel.open(directory.resolve(column.fileName()), StandardOpenOption.READ)) {
+            if (channel.size() != length) {
+                throw new IOException("Размер файла " + column.fileName() + " не совпадает с meta.bin: хранилище повреждено");
+            }
+            int first = 0;
+            while (first < index.length) {
+                long start = index[first][base];
+                int last = first;
+                while (last + 1 < index.length && index[last + 1][base] - start <= SEGMENT_SIZE) {
+                    last++;
+                }
+                long end = last + 1 < index.length ? index[last + 1][base] : length;
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                for (int i = first; i <= last; i++) {
+                    long from = index[i][base];
+                    long to = i + 1 < index.length ? index[i + 1][base] : length;
+                    Block block = blocks.get(i);
+                    block.data[column.ordinal()] = segment.slice((int) (from - start), (int) (to - from));
+                    block.min[column.ordinal()] = index[i][base + 1];
+                    block.max[column.ordinal()] = index[i][base + 2];
+                }
+                first = last + 1;
+            }
+        }
+    }
+
+    /**
+     * Количество строк исходного лога, включая строки с ошибками разбора
+     */
+    public long getSourceLines() {
+        return sourceLines;
+    }
+
+    /**
+     * Количество записей в хранилище
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    /**
+     * Часовой пояс первой записи (секунды), 0 для пустого хранилища
+     */
+    public int getFirstOffsetSeconds() {
+        if (blocks.isEmpty()) {
+            return 0;
+        }
+        long value = new Cursor(blocks.get(0).data[ColumnStore.Column.OFFSET.ordinal()]).varint();
+        return (int) ((value >>> 1) ^ -(value & 1));
+    }
+
+    /**
+     * Количество записей, подходящих под запрос
+     */
+    public long count(ColumnQuery query) throws IOException {
+        Selection selection = new Selection(query);
+        Scratch scratch = new Scratch(blockRows);
+        long total = 0;
+        for (Block block : blocks) {
+            total += selection.select(block, scratch);
+        }
+        return total;
+    }
+
+    /**
+     * Сумма размеров ответов по записям, подходящим под запрос
+     */
+    public long sumBytes(ColumnQuery query) throws IOException {
+        Selection selection = new Selection(query);
+        Scratch scratch = new Scratch(blockRows);
+        long total = 0;
+        for (Block block : blocks) {
+            int selected = selection.select(block, scratch);
+            if (selected == 0) {
+                continue;
+            }
+            decodeUnsigned(block, ColumnStore.Column.SIZE, scratch.size);
+            for (int i = 0; i < selected; i++) {
+                total += scratch.size[scratch.selected[i]];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Самые частые пути среди записей, подходящих под запрос (не больше k), по убыванию количества
+     */
+    public Map<String, Long> topPaths(ColumnQuery query, int k) throws IOException {
+        Selection selection = new Selection(query);
+        Scratch scratch = new Scratch(blockRows);
+        long[] counts = new long[paths().length];
+        for (Block block : blocks) {
+            int selected = selection.select(block, scratch);
+            if (selected == 0) {
+                continue;
+            }
+            decodeUnsigned(block, ColumnStore.Column.PATH, scratch.path);
+            for (int i = 0; i < selected; i++) {
+                counts[scratch.path[scratch.selected[i]]]++;
+            }
+        }
+        Integer[] order = new Integer[counts.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (int i = 0; i < order.length && top.size() < k && counts[order[i]] > 0; i++) {
+            top.put(paths[order[i]], counts[order[i]]);
+        }
+        return top;
+    }
+
+    /**
+     * Собирает Statistics по записям, подходящим под запрос, так же как при разборе текста;
+     * блоки делятся между threads потоками, частичные результаты объединяются по порядку блоков.
+     * Для запроса без условий количество строк - как в исходном логе, иначе - количество выбранных записей.
+     */
+    public AnalysisResult toStatistics(ColumnQuery query, StatisticsConfig config, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть положительным: " + threads);
+        }
+        Selection selection = new Selection(query);
+        Dictionaries dictionaries = new Dictionaries();
+        int groups = Math.max(1, Math.min(blocks.size(), threads * BLOCKS_PER_THREAD));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Statistics>> futures = new ArrayList<>();
+            for (int g = 0; g < groups; g++) {
+                int from = (int) ((long) blocks.size() * g / groups);
+                int to = (int) ((long) blocks.size() * (g + 1) / groups);
+                futures.add(executor.submit(() -> rebuild(from, to, selection, dictionaries, config)));
+            }
+            Statistics statistics = null;
+            for (Future<Statistics> future : futures) {
+                Statistics partial = future.get();
+                if (statistics == null) {
+                    statistics = partial;
+                } else {
+                    statistics.merge(partial);
+                }
+            }
+            return new AnalysisResult(statistics, query.isAll() ? sourceLines : statistics.getEntryCount());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Чтение хранилища прервано", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Statistics rebuild(int fromBlock, int toBlock, Selection selection, Dictionaries dictionaries,
+                               StatisticsConfig config) {
+        Statistics statistics = new Statistics(config);
+        Scratch scratch = new Scratch(blockRows);
+        HttpMethod[] methods = HttpMethod.values();
+        for (int b = fromBlock; b < toBlock; b++) {
+            Block block = blocks.get(b);
+            int selected = selection.select(block, scratch);
+            if (selected == 0) {
+                continue;
+            }
+            decodeSigned(block, ColumnStore.Column.TIME, scratch.time);
+            decodeSigned(block, ColumnStore.Column.OFFSET, scratch.offset);
+            decodeBytes(block, ColumnStore.Column.METHOD, scratch.method);
+            decodeBytes(block, ColumnStore.Column.STATUS, scratch.status);
+            decodeUnsigned(block, ColumnStore.Column.SIZE, scratch.size);
+            decodeUnsigned(block, ColumnStore.Column.IP, scratch.ip);
+            decodeUnsigned(block, ColumnStore.Column.PATH, scratch.path);
+            decodeUnsigned(block, ColumnStore.Column.REFERER, scratch.referer);
+            decodeUnsigned(block, ColumnStore.Column.USER_AGENT, scratch.agent);
+            for (int n = 0; n < selected; n++) {
+                int i = scratch.selected[n];
+                int ip = scratch.ip[i];
+                int path = scratch.path[i];
+                int referer = scratch.referer[i] - 1;
+                int agent = scratch.agent[i];
+                statistics.addEntry(new LogEntry(dictionaries.ipHigh[ip], dictionaries.ipLow[ip], scratch.time[i],
+                        (int) scratch.offset[i], methods[scratch.method[i]], dictionaries.pathIds[path], paths[path],
+                        statuses[scratch.status[i]], scratch.size[i],
+                        referer < 0 ? StringDictionary.NO_ID : dictionaries.refererIds[referer],
+                        referer < 0 ? null : dictionaries.referers[referer],
+                        dictionaries.userAgentIds[agent], dictionaries.userAgents[agent]));
+            }
+        }
+        return statistics;
+    }
+
+    private String[] paths() throws IOException {
+        if (paths == null) {
+            paths = readStrings(ColumnStore.Column.PATH);
+            pathIds = new HashMap<>();
+            for (int i = 0; i < paths.length; i++) {
+                pathIds.put(paths[i], i);
+            }
+        }
+        return paths;
+    }
+
+    private String[] readStrings(ColumnStore.Column column) throws IOException {
+        try (DataInputStream in = dataFile(directory.resolve(column.dictionaryFileName()))) {
+            String[] values = new String[in.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readUTF();
+            }
+            return values;
+        }
+    }
+
+    private static DataInputStream dataFile(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+    }
+
+    private static void decodeSigned(Block block, ColumnStore.Column column, long[] values) {
+        Cursor cursor = new Cursor(block.data[column.ordinal()]);
+        long previous = 0;
+        for (int i = 0; i < block.rows; i++) {
+            long value = cursor.varint();
+            previous += (value >>> 1) ^ -(value & 1);
+            values[i] = previous;
+        }
+    }
+
+    private static void decodeUnsigned(Block block, ColumnStore.Column column, int[] values) {
+        Cursor cursor = new Cursor(block.data[column.ordinal()]);
+        for (int i = 0; i < block.rows; i++) {
+            values[i] = (int) cursor.varint();
+        }
+    }
+
+    private static void decodeBytes(Block block, ColumnStore.Column column, int[] values) {
+        ByteBuffer data = block.data[column.ordinal()];
+        for (int i = 0; i < block.rows; i++) {
+            values[i] = data.get(i) & 0xFF;
+        }
+    }
+
+    /**
+     * Блок: количество записей, байты и минимум/максимум каждого столбца
+     */
+    private static final class Block {
+        final int rows;
+        final ByteBuffer[] data;
+        final long[] min;
+        final long[] max;
+
+        Block(int rows, int columns) {
+            this.rows = rows;
+            this.data = new ByteBuffer[columns];
+            this.min = new long[columns];
+            this.max = new long[columns];
+        }
+
+        long min(ColumnStore.Column column) {
+            return min[column.ordinal()];
+        }
+
+        long max(ColumnStore.Column column) {
+            return max[column.ordinal()];
+        }
+    }
+
+    /**
+     * Условие запроса, приведённое к номерам хранилища; выбирает записи блока в scratch.selected
+     */
+    private final class Selection {
+        private final ColumnQuery query;
+        private final boolean[] statusMatches;
+        private final int pathId; // -1 - путь не задан, -2 - такого пути в хранилище нет
+
+        Selection(ColumnQuery query) throws IOException {
+            this.query = query;
+            this.statusMatches = new boolean[statuses.length];
+            for (int i = 0; i < statuses.length; i++) {
+                statusMatches[i] = statuses[i] >= query.getMinStatus() && statuses[i] <= query.getMaxStatus();
+            }
+            if (query.getPath() == null) {
+                pathId = -1;
+            } else {
+                paths();
+                pathId = pathIds.getOrDefault(query.getPath(), -2);
+            }
+        }
+
+        // количество выбранных записей; столбцы условий декодируются, только если блок подходит не целиком
+        int select(Block block, Scratch scratch) {
+            if (pathId == -2) {
+                return 0;
+            }
+            long minTime = block.min(ColumnStore.Column.TIME);
+            long maxTime = block.max(ColumnStore.Column.TIME);
+            long minStatus = block.min(ColumnStore.Column.STATUS);
+            long maxStatus = block.max(ColumnStore.Column.STATUS);
+            if (maxTime < query.getFromEpochSecond() || minTime >= query.getToEpochSecond()
+                    || maxStatus < query.getMinStatus() || minStatus > query.getMaxStatus()
+                    || pathId >= 0 && (pathId < block.min(ColumnStore.Column.PATH)
+                    || pathId > block.max(ColumnStore.Column.PATH))) {
+                return 0;
+            }
+            boolean checkTime = minTime < query.getFromEpochSecond() || maxTime >= query.getToEpochSecond();
+            boolean checkStatus = minStatus < query.getMinStatus() || maxStatus > query.getMaxStatus();
+            boolean checkPath = pathId >= 0 && (block.min(ColumnStore.Column.PATH) != pathId
+                    || block.max(ColumnStore.Column.PATH) != pathId);
+            if (checkTime) {
+                decodeSigned(block, ColumnStore.Column.TIME, scratch.time);
+            }
+            if (checkStatus) {
+                decodeBytes(block, ColumnStore.Column.STATUS, scratch.status);
+            }
+            if (checkPath) {
+                decodeUnsigned(block, ColumnStore.Column.PATH, scratch.path);
+            }
+            int selected = 0;
+            for (int i = 0; i < block.rows; i++) {
+                if (checkTime && (scratch.time[i] < query.getFromEpochSecond()
+                        || scratch.time[i] >= query.getToEpochSecond())) {
+                    continue;
+                }
+                if (checkStatus && !statusMatches[scratch.status[i]]) {
+                    continue;
+                }
+                if (checkPath && scratch.path[i] != pathId) {
+                    continue;
+                }
+                scratch.selected[selected++] = i;
+            }
+            return selected;
+        }
+    }
+
+    /**
+     * Соответствие номеров хранилища записям для LogEntry: номера в общих StringDictionary,
+     * строки и разобранные User-Agent; вычисляется один раз на значение, а не на запись
+     */
+    private final class Dictionaries {
+        final long[] ipHigh;
+        final long[] ipLow;
+        final int[] pathIds;
+        final String[] referers;
+        final int[] refererIds;
+        final UserAgent[] userAgents;
+        final int[] userAgentIds;
+
+        Dictionaries() throws IOException {
+            try (DataInputStream in = dataFile(directory.resolve(ColumnStore.Column.IP.dictionaryFileName()))) {
+                int size = in.readInt();
+                ipHigh = new long[size];
+                ipLow = new long[size];
+                long[] ip = new long[2];
+                for (int i = 0; i < size; i++) {
+                    IpAddress.readFrom(in, ip);
+                    ipHigh[i] = ip[0];
+                    ipLow[i] = ip[1];
+                }
+            }
+            pathIds = sharedIds(paths(), StringDictionary.paths());
+            referers = readStrings(ColumnStore.Column.REFERER);
+            refererIds = sharedIds(referers, StringDictionary.referers());
+            String[] agents = readStrings(ColumnStore.Column.USER_AGENT);
+            userAgentIds = sharedIds(agents, StringDictionary.userAgents());
+            userAgents = new UserAgent[agents.length];
+            for (int i = 0; i < agents.length; i++) {
+                userAgents[i] = UserAgentCache.shared().get(agents[i]);
+            }
+        }
+
+        private int[] sharedIds(String[] values, StringDictionary dictionary) {
+            int[] ids = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                ids[i] = dictionary.idOf(values[i]);
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * Массивы для декодированных столбцов одного блока, свои у каждого потока
+     */
+    private static final class Scratch {
+        final long[] time;
+        final long[] offset;
+        final int[] method;
+        final int[] status;
+        final int[] size;
+        final int[] ip;
+        final int[] path;
+        final int[] referer;
+        final int[] agent;
+        final int[] selected;
+
+        Scratch(int rows) {
+            time = new long[rows];
+            offset = new long[rows];
+            method = new int[rows];
+            status = new int[rows];
+            size = new int[rows];
+            ip = new int[rows];
+            path = new int[rows];
+            referer = new int[rows];
+            agent = new int[rows];
+            selected = new int[rows];
+        }
+    }
+
+    /**
+     * Последовательное чтение varint из байтов блока
+     */
+    private static final class Cursor {
+        private final ByteBuffer data;
+        private int position;
+
+        Cursor(ByteBuffer data) {
+            this.data = data;
+        }
+
+        long varint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Статистика, в которую записи добавляют несколько потоков одновременно.
+ * Записи раскладываются по полосам: полоса - обычная Statistics под собственной блокировкой,
+ * поток при первом обращении закрепляется за одной полосой (по кругу), поэтому потоки,
+ * которых не больше числа полос, не ждут друг друга. Счётчики записей, трафика и ошибок
+ * и границы времени обновляются под той же блокировкой, а читаются без блокировок.
+ * Снимок (snapshot) согласован: на время среза берутся блокировки всех полос, и каждая полоса
+ * только заменяется пустой Statistics, поэтому в снимок входят ровно записи, добавленные до среза,
+ * а писатели ждут лишь замены ссылок. Снятые полосы сливаются в накопленную статистику уже без блокировок полос.
+ * Счётчики (getEntryCount и др.) - текущие значения: в момент среза они совпадают со снимком, после - могут быть больше.
+ * Количество полос по умолчанию - -Dstatistics.stripes, иначе удвоенное число процессоров.
+ */
+public class ConcurrentStatistics {
+    private final StatisticsConfig config;
+    private final Stripe[] stripes;
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    private final ThreadLocal<Stripe> stripe;
+    private final Statistics merged; // записи всех прошлых срезов, под монитором самого объекта
+
+    private final LongAdder entryCount = new LongAdder();
+    private final LongAdder totalTraffic = new LongAdder();
+    private final LongAdder errorRequests = new LongAdder();
+    private final AtomicLong minTime = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxTime = new AtomicLong(Long.MIN_VALUE);
+
+    public ConcurrentStatistics(StatisticsConfig config) {
+        this(config, Integer.getInteger("statistics.stripes", 2 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    public ConcurrentStatistics(StatisticsConfig config, int stripeCount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("Количество полос должно быть положительным: " + stripeCount);
+        }
+        this.config = config;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(new Statistics(config));
+        }
+        this.stripe = ThreadLocal.withInitial(() -> stripes[Math.floorMod(nextStripe.getAndIncrement(), stripes.length)]);
+        this.merged = new Statistics(config);
+    }
+
+    public void addEntry(LogEntry entry) {
+        Stripe stripe = this.stripe.get();
+        stripe.lock.lock();
+        try {
+            stripe.statistics.addEntry(entry);
+            entryCount.increment();
+            totalTraffic.add(entry.getDataSize());
+            if (entry.getResponseCode() >= 400 && entry.getResponseCode() < 600) {
+                errorRequests.increment();
+            }
+            updateTime(entry.getEpochSecond(), entry.getEpochSecond());
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Добавляет частичную статистику, собранную отдельно (например, по фрагменту файла)
+     */
+    public void merge(Statistics other) {
+        Stripe stripe = this.stripe.get();
+        stripe.lock.lock();
+        try {
+            stripe.statistics.merge(other);
+            entryCount.add(other.getEntryCount());
+            totalTraffic.add(other.getTotalTraffic());
+            errorRequests.add(other.getErrorRequests());
+            if (other.getEntryCount() > 0) {
+                updateTime(other.getMinEpochSecond(), other.getMaxEpochSecond());
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // чтение без записи в общую строку кэша, пока граница не сдвигается
+    private void updateTime(long min, long max) {
+        long current;
+        while (min < (current = minTime.get()) && !minTime.compareAndSet(current, min)) {
+        }
+        while (max > (current = maxTime.get()) && !maxTime.compareAndSet(current, max)) {
+        }
+    }
+
+    /**
+     * Статистика по всем записям, добавленным до среза (см. описание класса). Снимки делаются по одному;
+     * слияние и копирование накопленной статистики идут без блокировок полос
+     */
+    public Statistics snapshot() {
+        Statistics[] fresh = new Statistics[stripes.length];
+        for (int i = 0; i < fresh.length; i++) {
+            fresh[i] = new Statistics(config);
+        }
+        synchronized (merged) {
+            Statistics[] detached = new Statistics[stripes.length];
+            int locked = 0;
+            try {
+                for (; locked < stripes.length; locked++) {
+                    stripes[locked].lock.lock();
+                }
+                for (int i = 0; i < stripes.length; i++) {
+                    detached[i] = stripes[i].statistics;
+                    stripes[i].statistics = fresh[i];
+                }
+            } finally {
+                for (int i = 0; i < locked; i++) {
+                    stripes[i].lock.unlock();
+                }
+            }
+            for (Statistics statistics : detached) {
+                merged.merge(statistics);
+            }
+            Statistics result = new Statistics(config);
+            result.merge(merged);
+            return result;
+        }
+    }
+
+    public long getEntryCount() {
+        return entryCount.sum();
+    }
+
+    public long getTotalTraffic() {
+        return totalTraffic.sum();
+    }
+
+    public long getErrorRequests() {
+        return errorRequests.sum();
+    }
+
+    /**
+     * Время самой ранней записи в секундах от 1970-01-01T00:00:00Z, Long.MAX_VALUE без записей
+     */
+    public long getMinEpochSecond() {
+        return minTime.get();
+    }
+
+    /**
+     * Время самой поздней записи в секундах от 1970-01-01T00:00:00Z, Long.MIN_VALUE без записей
+     */
+    public long getMaxEpochSecond() {
+        return maxTime.get();
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    public StatisticsConfig getConfig() {
+        return config;
+    }
+
+    // полоса: статистика заменяется при срезе, поэтому обращения к ней - только под lock
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private Statistics statistics;
+
+        Stripe(Statistics statistics) {
+            this.statistics = statistics;
+        }
+    }
+}
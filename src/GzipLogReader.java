@@ -0,0 +1,352 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Чтение сжатого gzip лога (в том числе из нескольких склеенных gzip-потоков) без распаковки на диск.
+ * Распаковка идёт в отдельном потоке и передаёт большие блоки байтов разборщику через ограниченную очередь,
+ * так что распаковка и разбор строк выполняются одновременно. Строки, разрезанные границей блока,
+ * склеиваются перед передачей обработчику.
+ * Если в файле несколько gzip-потоков (members), они распаковываются параллельно: начала потоков
+ * находятся по сигнатуре заголовка, каждый кандидат распаковывается отдельной задачей, а результат
+ * принимается, только если предыдущий поток заканчивается ровно на этом кандидате и сходятся CRC32 и длина.
+ * Задача складывает блоки в собственную ограниченную очередь и ждёт, пока их заберут, поэтому распаковка
+ * вперёд занимает не больше DECODE_AHEAD_BLOCKS блоков на все задачи, каким бы большим ни был gzip-поток.
+ */
+public class GzipLogReader {
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int QUEUE_CAPACITY = 16; // блоков в очереди между распаковкой и разбором
+    private static final int DECODE_AHEAD_BLOCKS = 64; // блоков в очередях всех задач параллельной распаковки
+    private static final Block END = new Block(new byte[0], 0);
+
+    private final Path path;
+    private final int threads;
+
+    public GzipLogReader(Path path) {
+        this(path, 1);
+    }
+
+    /**
+     * threads - сколько gzip-потоков файла может распаковываться одновременно
+     */
+    public GzipLogReader(Path path, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть положительным: " + threads);
+        }
+        this.path = path;
+        this.threads = threads;
+    }
+
+    public static boolean isGzip(Path path) {
+        return path.getFileName().toString().endsWith(".gz");
+    }
+
+    /**
+     * Читает весь файл, возвращает количество строк
+     */
+    public long read(MappedLogReader.LineHandler handler) throws IOException {
+        BlockingQueue<Block> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicBoolean consumerDone = new AtomicBoolean();
+        ExecutorService producer = Executors.newSingleThreadExecutor(GzipLogReader::daemonThread);
+        ExecutorService decoders = threads > 1 ? Executors.newFixedThreadPool(threads, GzipLogReader::daemonThread) : null;
+        try {
+            Future<?> production = producer.submit(() -> {
+                try {
+                    produce(queue, decoders);
+                } finally {
+                    // если разбор завершился ошибкой, очередь никто не читает: ждём места, только пока он идёт
+                    while (!consumerDone.get() && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                    }
+                }
+                return null;
+            });
+            long lines = split(queue, handler);
+            production.get(); // ошибка распаковки передаётся вызывающему
+            return lines;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Чтение прервано", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            consumerDone.set(true);
+            producer.shutdownNow();
+            if (decoders != null) {
+                decoders.shutdownNow();
+            }
+        }
+    }
+
+    // потоки распаковки не должны удерживать JVM, если вызывающий код не дождался их завершения
+    private static Thread daemonThread(Runnable task) {
+        Thread thread = new Thread(task, "gzip-reader");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void produce(BlockingQueue<Block> queue, ExecutorService decoders) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (decoders != null && size <= Integer.MAX_VALUE) {
+                MappedByteBuffer compressed = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                List<Integer> candidates = findMemberCandidates(compressed);
+                if (candidates.size() > 1) {
+                    produceParallel(compressed, candidates, queue, decoders);
+                    return;
+                }
+            }
+        }
+        produceSequential(queue);
+    }
+
+    // один поток распаковки; GZIPInputStream сам переходит к следующему gzip-потоку
+    private void produceSequential(BlockingQueue<Block> queue) throws IOException, InterruptedException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(path), 64 * 1024)) {
+            while (true) {
+                byte[] data = new byte[BLOCK_SIZE];
+                int length = in.readNBytes(data, 0, BLOCK_SIZE);
+                if (length == 0) {
+                    return;
+                }
+                queue.put(new Block(data, length));
+            }
+        }
+    }
+
+    // параллельная распаковка кандидатов с окном задач; блоки передаются в очередь в порядке файла
+    private void produceParallel(ByteBuffer compressed, List<Integer> candidates, BlockingQueue<Block> queue,
+                                 ExecutorService decoders) throws IOException, InterruptedException {
+        int memberCapacity = Math.max(2, DECODE_AHEAD_BLOCKS / (threads + 1));
+        Deque<Member> window = new ArrayDeque<>();
+        int next = 0;
+        int expected = 0; // начало следующего настоящего gzip-потока
+        try {
+            while (expected < compressed.capacity()) {
+                while (window.size() <= threads && next < candidates.size()) {
+                    Member member = new Member(candidates.get(next++), memberCapacity);
+                    member.task = decoders.submit(() -> member.decode(compressed));
+                    window.add(member);
+                }
+                Member member = window.poll();
+                if (member == null && expected > 0) {
+                    return; // после последнего gzip-потока мусор, как и GZIPInputStream, не читаем
+                }
+                if (member == null || member.start > expected) {
+                    throw new IOException("Не найдено начало gzip-потока на позиции " + expected);
+                }
+                if (member.start < expected) {
+                    member.task.cancel(true); // кандидат оказался внутри сжатых данных предыдущего потока
+                    continue;
+                }
+                // начало подтверждено концом предыдущего потока: блоки передаются по мере распаковки,
+                // контрольная сумма проверяется в конце (как в GZIPInputStream)
+                while (true) {
+                    Block block = member.blocks.poll(100, TimeUnit.MILLISECONDS);
+                    if (block == END || (block == null && member.task.isDone() && member.blocks.isEmpty())) {
+                        break; // без END - задача завершилась ошибкой
+                    }
+                    if (block != null) {
+                        queue.put(block);
+                    }
+                }
+                try {
+                    expected = member.task.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+                    throw new IOException("Ошибка распаковки gzip-потока с позиции " + expected, e.getCause());
+                }
+            }
+        } finally {
+            for (Member member : window) {
+                member.task.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Позиции, с которых может начинаться gzip-поток: сигнатура 1f 8b, метод 8 (deflate), нулевые зарезервированные флаги
+     */
+    static List<Integer> findMemberCandidates(ByteBuffer compressed) {
+        List<Integer> candidates = new ArrayList<>();
+        int limit = compressed.capacity() - 10;
+        for (int i = 0; i <= limit; i++) {
+            if (compressed.get(i) == (byte) 0x1f && compressed.get(i + 1) == (byte) 0x8b
+                    && compressed.get(i + 2) == 8 && (compressed.get(i + 3) & 0xE0) == 0) {
+                candidates.add(i);
+            }
+        }
+        return candidates;
+    }
+
+    // деление блоков на строки; строка на границе блоков собирается в carry
+    private static long split(BlockingQueue<Block> queue, MappedLogReader.LineHandler handler) throws InterruptedException {
+        long lineNumber = 0;
+        ByteBuffer carry = ByteBuffer.allocate(MappedLogReader.MAX_LINE_LENGTH * 4 + 2);
+        long[] carried = new long[1]; // длина строки в carry; больше ёмкости - в carry только начало строки
+        while (true) {
+            Block block = queue.take();
+            if (block == END) {
+                break;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(block.data, 0, block.length);
+            int lineStart = 0;
+            for (int i = 0; i < block.length; i++) {
+                if (block.data[i] != '\n') {
+                    continue;
+                }
+                if (carried[0] > 0) {
+                    appendCarry(carry, carried, buffer, lineStart, i);
+                    handleCarry(carry, carried, ++lineNumber, handler);
+                } else {
+                    MappedLogReader.handleLine(buffer, lineStart, i, ++lineNumber, handler);
+                }
+                lineStart = i + 1;
+            }
+            appendCarry(carry, carried, buffer, lineStart, block.length);
+        }
+        if (carried[0] > 0) {
+            // последняя строка без перевода строки
+            handleCarry(carry, carried, ++lineNumber, handler);
+        }
+        return lineNumber;
+    }
+
+    private static void appendCarry(ByteBuffer carry, long[] carried, ByteBuffer buffer, int from, int to) {
+        carried[0] += to - from;
+        if (carry.position() + (to - from) > carry.capacity()) {
+            // строка заведомо длиннее MAX_LINE_LENGTH символов (в UTF-8 не больше 4 байт на символ):
+            // сохраняется только её начало
+            to = from + carry.remaining();
+        }
+        carry.put(carry.position(), buffer, from, to - from);
+        carry.position(carry.position() + to - from);
+    }
+
+    private static void handleCarry(ByteBuffer carry, long[] carried, long lineNumber,
+                                    MappedLogReader.LineHandler handler) {
+        if (carried[0] > carry.position()) {
+            handler.onLongLine(carry, 0, carry.position(), lineNumber, carried[0]);
+        } else {
+            MappedLogReader.handleLine(carry, 0, carry.position(), lineNumber, handler);
+        }
+        carry.clear();
+        carried[0] = 0;
+    }
+
+    private static final class Block {
+        private final byte[] data;
+        private final int length;
+
+        Block(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    // gzip-поток, начинающийся с кандидата start: распакованные блоки (END в конце) и задача распаковки,
+    // возвращающая позицию сразу за концом потока в сжатом файле
+    private static final class Member {
+        private final int start;
+        private final BlockingQueue<Block> blocks;
+        private Future<Integer> task;
+
+        private Member(int start, int capacity) {
+            this.start = start;
+            this.blocks = new ArrayBlockingQueue<>(capacity);
+        }
+
+        int decode(ByteBuffer file) throws IOException, InterruptedException {
+            ByteBuffer compressed = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int p = skipHeader(compressed, start);
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed.slice(p, compressed.capacity() - p));
+                CRC32 crc = new CRC32();
+                long total = 0;
+                while (!inflater.finished()) {
+                    byte[] data = new byte[BLOCK_SIZE];
+                    int length = 0;
+                    while (length < BLOCK_SIZE && !inflater.finished()) {
+                        int n = inflater.inflate(data, length, BLOCK_SIZE - length);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new IOException("Неожиданный конец gzip-потока");
+                        }
+                        length += n;
+                    }
+                    crc.update(data, 0, length);
+                    total += length;
+                    if (length > 0) {
+                        blocks.put(new Block(data, length)); // ждёт, пока разбор не заберёт предыдущие блоки
+                    }
+                }
+                int trailer = compressed.capacity() - inflater.getRemaining();
+                if (trailer + 8 > compressed.capacity()
+                        || compressed.getInt(trailer) != (int) crc.getValue()
+                        || compressed.getInt(trailer + 4) != (int) total) {
+                    throw new IOException("Не совпадает контрольная сумма gzip-потока");
+                }
+                blocks.put(END);
+                return trailer + 8;
+            } catch (DataFormatException | IndexOutOfBoundsException e) {
+                throw new IOException("Повреждённый gzip-поток: " + e.getMessage(), e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        // позиция начала сжатых данных после заголовка (RFC 1952)
+        private static int skipHeader(ByteBuffer compressed, int start) {
+            int flags = compressed.get(start + 3);
+            int p = start + 10;
+            if ((flags & 4) != 0) { // FEXTRA
+                p += 2 + (compressed.getShort(p) & 0xFFFF);
+            }
+            if ((flags & 8) != 0) { // FNAME
+                while (compressed.get(p++) != 0) {
+                }
+            }
+            if ((flags & 16) != 0) { // FCOMMENT
+                while (compressed.get(p++) != 0) {
+                }
+            }
+            if ((flags & 2) != 0) { // FHCRC
+                p += 2;
+            }
+            return p;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Отображение int -> int с открытой адресацией и линейным пробированием.
+ * Ключи и значения хранятся в примитивных массивах, без упаковки в Integer и без объектов-узлов.
+ */
+public class IntIntHashMap {
+    private static final int EMPTY = Integer.MIN_VALUE; // ключ Integer.MIN_VALUE хранится отдельно
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private boolean hasEmptyKey;
+    private int emptyKeyValue;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    public IntIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Прибавляет delta к значению ключа (отсутствующий ключ считается равным 0), возвращает новое значение
+     */
+    public int increment(int key, int delta) {
+        if (key == EMPTY) {
+            if (!hasEmptyKey) {
+                hasEmptyKey = true;
+                size++;
+            }
+            return emptyKeyValue += delta;
+        }
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return values[slot] += delta;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size > (mask + 1) * 3 / 4) {
+            rehash(keys.length * 2);
+        }
+        return delta;
+    }
+
+    /**
+     * Значение ключа или 0, если ключа нет
+     */
+    public int get(int key) {
+        if (key == EMPTY) {
+            return hasEmptyKey ? emptyKeyValue : 0;
+        }
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(IntIntConsumer consumer) {
+        if (hasEmptyKey) {
+            consumer.accept(EMPTY, emptyKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Записывает пары ключ-значение для контрольной точки (см. Checkpoint)
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        if (hasEmptyKey) {
+            out.writeInt(EMPTY);
+            out.writeInt(emptyKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                out.writeInt(keys[i]);
+                out.writeInt(values[i]);
+            }
+        }
+    }
+
+    public static IntIntHashMap readFrom(DataInput in) throws IOException {
+        int size = in.readInt();
+        IntIntHashMap map = new IntIntHashMap(Math.max(16, size));
+        for (int i = 0; i < size; i++) {
+            int key = in.readInt();
+            map.increment(key, in.readInt());
+        }
+        return map;
+    }
+
+    public interface IntIntConsumer {
+        void accept(int key, int value);
+    }
+
+    private int slot(int key) {
+        int hash = key * 0x9E3779B9; // перемешивание, чтобы соседние ключи не занимали соседние ячейки
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != EMPTY) {
+                int slot = slot(key);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * IP-адрес в двоичном виде: 128 бит в двух long (старшая и младшая половины).
+ * IPv4 хранится как IPv4-mapped адрес ::ffff:a.b.c.d, т.е. упакованный int в младших 32 битах.
+ * Текстовый вид строится только при выводе в отчёт.
+ * Если в поле адреса записано не IP (например, имя хоста), адрес кодируется внутри префикса 100::/64
+ * (RFC 6666, только для отбрасываемого трафика): в младшей половине - номер текста в общей таблице хостов
+ * или, когда таблица заполнена (-Dip.maxHosts) или имя длиннее MAX_HOST_LENGTH, 64-битный хеш текста
+ * со старшим битом 1 (текст тогда не сохраняется). Настоящий IPv6 из этого префикса тоже хранится
+ * как хост со своим текстом, поэтому числовой адрес никогда не совпадает с кодом хоста.
+ * Номера таблицы действительны только в текущем процессе, поэтому при сохранении (writeTo)
+ * такие адреса записываются текстом и при чтении (readFrom) заново заносятся в таблицу.
+ */
+public final class IpAddress implements Comparable<IpAddress> {
+    static final long IPV4_PREFIX = 0xFFFF_0000_0000L;
+    static final long HOST_HIGH = 0x0100_0000_0000_0000L;
+    static final int MAX_HOST_LENGTH = 255;
+    private static final int MAX_HOSTS = Integer.getInteger("ip.maxHosts", 16384);
+
+    private static final ConcurrentHashMap<String, Integer> HOST_IDS = new ConcurrentHashMap<>();
+    private static final List<String> HOSTS = new ArrayList<>();
+    private static long[] hostHashes = new long[64]; // хеш текста по номеру в таблице, под монитором HOSTS
+
+    private final long high;
+    private final long low;
+
+    public IpAddress(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public static boolean isIpv4(long high, long low) {
+        return high == 0 && (low & 0xFFFF_FFFF_0000_0000L) == IPV4_PREFIX;
+    }
+
+    /**
+     * Разбирает адрес из buffer в диапазоне [from, to) в result[0] (старшая половина) и result[1] (младшая).
+     * Строка, не являющаяся IPv4 или IPv6, сохраняется как имя хоста.
+     */
+    public static void parse(ByteBuffer buffer, int from, int to, long[] result) {
+        long ipv4 = parseIpv4(buffer, from, to);
+        if (ipv4 >= 0) {
+            result[0] = 0;
+            result[1] = IPV4_PREFIX | ipv4;
+            return;
+        }
+        if (!parseIpv6(buffer, from, to, result)) {
+            if (to - from > MAX_HOST_LENGTH) {
+                result[0] = HOST_HIGH;
+                result[1] = hostHash(buffer, from, to);
+                return;
+            }
+            byte[] bytes = new byte[to - from];
+            buffer.get(from, bytes);
+            host(new String(bytes, StandardCharsets.UTF_8), result);
+        } else if (result[0] == HOST_HIGH) {
+            host(formatIpv6(result[0], result[1]), result);
+        }
+    }
+
+    /**
+     * Код хоста с текстом text (см. описание класса)
+     */
+    public static void host(String text, long[] result) {
+        result[0] = HOST_HIGH;
+        Integer id = HOST_IDS.get(text);
+        if (id == null && text.length() <= MAX_HOST_LENGTH) {
+            synchronized (HOSTS) {
+                id = HOST_IDS.get(text);
+                if (id == null && HOSTS.size() < MAX_HOSTS) {
+                    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                    if (HOSTS.size() == hostHashes.length) {
+                        hostHashes = Arrays.copyOf(hostHashes, hostHashes.length * 2);
+                    }
+                    hostHashes[HOSTS.size()] = hostHash(ByteBuffer.wrap(bytes), 0, bytes.length);
+                    HOSTS.add(text);
+                    id = HOSTS.size() - 1;
+                    HOST_IDS.put(text, id);
+                }
+            }
+        }
+        if (id != null) {
+            result[1] = id;
+        } else {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            result[1] = hostHash(ByteBuffer.wrap(bytes), 0, bytes.length);
+        }
+    }
+
+    /**
+     * Адрес - код хоста с номером в таблице текущего процесса (при сохранении его нужно записывать текстом)
+     */
+    public static boolean isHostId(long high, long low) {
+        return high == HOST_HIGH && low >= 0;
+    }
+
+    /**
+     * Записывает адрес для контрольной точки или индекса: код хоста из таблицы - текстом, остальное - двумя long
+     */
+    public static void writeTo(DataOutput out, long high, long low) throws IOException {
+        boolean hostId = isHostId(high, low);
+        out.writeBoolean(hostId);
+        if (hostId) {
+            out.writeUTF(format(high, low));
+        } else {
+            out.writeLong(high);
+            out.writeLong(low);
+        }
+    }
+
+    /**
+     * Читает адрес, записанный writeTo, в result[0] и result[1]
+     */
+    public static void readFrom(DataInput in, long[] result) throws IOException {
+        if (in.readBoolean()) {
+            host(in.readUTF(), result);
+        } else {
+            result[0] = in.readLong();
+            result[1] = in.readLong();
+        }
+    }
+
+    public static IpAddress readFrom(DataInput in) throws IOException {
+        long[] result = new long[2];
+        readFrom(in, result);
+        return new IpAddress(result[0], result[1]);
+    }
+
+    // FNV-1a по байтам имени; старший бит отличает хеш от номера в таблице
+    private static long hostHash(ByteBuffer buffer, int from, int to) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x100000001B3L;
+        }
+        return HyperLogLog.mix64(hash) | Long.MIN_VALUE;
+    }
+
+    public static String format(long high, long low) {
+        if (isIpv4(high, low)) {
+            return ((low >>> 24) & 0xFF) + "." + ((low >>> 16) & 0xFF) + "." + ((low >>> 8) & 0xFF) + "." + (low & 0xFF);
+        }
+        if (high == HOST_HIGH) {
+            if (low < 0) {
+                return "(хост " + Long.toHexString(low & Long.MAX_VALUE) + ")";
+            }
+            synchronized (HOSTS) {
+                if (low >= HOSTS.size()) {
+                    throw new IllegalArgumentException("Неизвестный номер хоста: " + low);
+                }
+                return HOSTS.get((int) low);
+            }
+        }
+        return formatIpv6(high, low);
+    }
+
+    private static String formatIpv6(long high, long low) {
+        int[] groups = new int[8];
+        for (int i = 0; i < 4; i++) {
+            groups[i] = (int) (high >>> (48 - 16 * i)) & 0xFFFF;
+            groups[i + 4] = (int) (low >>> (48 - 16 * i)) & 0xFFFF;
+        }
+        // самая длинная серия нулевых групп (от двух) сокращается до "::" (RFC 5952)
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < 8; ) {
+            int j = i;
+            while (j < 8 && groups[j] == 0) {
+                j++;
+            }
+            if (j - i > bestLength) {
+                bestStart = i;
+                bestLength = j - i;
+            }
+            i = j == i ? i + 1 : j;
+        }
+        StringBuilder sb = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                sb.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ':') {
+                sb.append(':');
+            }
+            sb.append(Integer.toHexString(groups[i]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 64-битный хеш адреса для скетчей. Для хоста из таблицы хешируется не номер, а текст
+     * (как у хоста, не попавшего в таблицу), поэтому хеш не зависит от процесса и порядка хостов
+     * и скетчи из контрольной точки совпадают с новыми
+     */
+    public static long hash(long high, long low) {
+        if (isHostId(high, low)) {
+            synchronized (HOSTS) {
+                low = hostHashes[(int) low];
+            }
+        }
+        return HyperLogLog.mix64(high * 0x9E3779B97F4A7C15L ^ HyperLogLog.mix64(low));
+    }
+
+    // упакованный IPv4 (32 бита без знака) или -1
+    private static long parseIpv4(ByteBuffer buffer, int from, int to) {
+        long result = 0;
+        int parts = 0;
+        int p = from;
+        while (parts < 4) {
+            int start = p;
+            int part = 0;
+            while (p < to && p - start < 3 && buffer.get(p) >= '0' && buffer.get(p) <= '9') {
+                part = part * 10 + (buffer.get(p) - '0');
+                p++;
+            }
+            if (p == start || part > 255) {
+                return -1;
+            }
+            result = (result << 8) | part;
+            parts++;
+            if (parts < 4) {
+                if (p >= to || buffer.get(p) != '.') {
+                    return -1;
+                }
+                p++;
+            }
+        }
+        return p == to ? result : -1;
+    }
+
+    private static boolean parseIpv6(ByteBuffer buffer, int from, int to, long[] result) {
+        int[] groups = new int[8];
+        int count = 0;
+        int compressAt = -1;
+        int p = from;
+        if (to - from >= 2 && buffer.get(p) == ':' && buffer.get(p + 1) == ':') {
+            compressAt = 0;
+            p += 2;
+        }
+        while (p < to) {
+            if (count == 8) {
+                return false;
+            }
+            // IPv4 в конце адреса: ::ffff:1.2.3.4
+            int colon = LogLineParser.indexOf(buffer, (byte) ':', p, to);
+            int dot = LogLineParser.indexOf(buffer, (byte) '.', p, colon < 0 ? to : colon);
+            if (dot >= 0) {
+                long ipv4 = colon < 0 ? parseIpv4(buffer, p, to) : -1;
+                if (ipv4 < 0 || count > 6) {
+                    return false;
+                }
+                groups[count++] = (int) (ipv4 >>> 16) & 0xFFFF;
+                groups[count++] = (int) ipv4 & 0xFFFF;
+                p = to;
+                break;
+            }
+            int start = p;
+            int group = 0;
+            while (p < to && p - start < 4) {
+                int digit = Character.digit(buffer.get(p), 16);
+                if (digit < 0) {
+                    break;
+                }
+                group = (group << 4) | digit;
+                p++;
+            }
+            if (p == start) {
+                return false;
+            }
+            groups[count++] = group;
+            if (p == to) {
+                break;
+            }
+            if (buffer.get(p) != ':') {
+                return false;
+            }
+            p++;
+            if (p < to && buffer.get(p) == ':') {
+                if (compressAt >= 0) {
+                    return false;
+                }
+                compressAt = count;
+                p++;
+            } else if (p == to) {
+                return false;
+            }
+        }
+        if (compressAt < 0 ? count != 8 : count > 7) {
+            return false;
+        }
+        long high = 0;
+        long low = 0;
+        int shift = compressAt < 0 ? 0 : 8 - count;
+        for (int i = 0; i < count; i++) {
+            int position = i < compressAt || compressAt < 0 ? i : i + shift;
+            if (position < 4) {
+                high |= (long) groups[i] << (48 - 16 * position);
+            } else {
+                low |= (long) groups[i] << (48 - 16 * (position - 4));
+            }
+        }
+        result[0] = high;
+        result[1] = low;
+        return true;
+    }
+
+    /**
+     * Порядок адресов: числовой, хосты из таблицы - по тексту (номера зависят от порядка разбора)
+     */
+    public static int compare(long high, long low, long otherHigh, long otherLow) {
+        int result = Long.compareUnsigned(high, otherHigh);
+        if (result == 0 && low != otherLow && isHostId(high, low) && isHostId(otherHigh, otherLow)) {
+            return format(high, low).compareTo(format(otherHigh, otherLow));
+        }
+        return result != 0 ? result : Long.compareUnsigned(low, otherLow);
+    }
+
+    @Override
+    public int compareTo(IpAddress other) {
+        return compare(high, low, other.high, other.low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IpAddress)) {
+            return false;
+        }
+        IpAddress other = (IpAddress) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hash(high, low));
+    }
+
+    @Override
+    public String toString() {
+        return format(high, low);
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Счётчики по IP-адресам в двоичном виде (см. IpAddress).
+ * IPv4 хранятся в IntIntHashMap по упакованному int, остальные адреса - в отдельной таблице
+ * с открытой адресацией по паре long. Строки и объекты-ключи не создаются.
+ */
+public class IpCountMap {
+    private final IntIntHashMap ipv4 = new IntIntHashMap(1024);
+
+    private long[] highs;
+    private long[] lows;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    public IpCountMap() {
+        allocate(16);
+    }
+
+    /**
+     * Прибавляет delta к счётчику адреса, возвращает новое значение
+     */
+    public int increment(long high, long low, int delta) {
+        if (IpAddress.isIpv4(high, low)) {
+            return ipv4.increment((int) low, delta);
+        }
+        int slot = slot(high, low);
+        while (used[slot]) {
+            if (highs[slot] == high && lows[slot] == low) {
+                return values[slot] += delta;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        highs[slot] = high;
+        lows[slot] = low;
+        values[slot] = delta;
+        if (++size > (mask + 1) * 3 / 4) {
+            rehash(used.length * 2);
+        }
+        return delta;
+    }
+
+    /**
+     * Значение счётчика или 0, если адреса нет
+     */
+    public int get(long high, long low) {
+        if (IpAddress.isIpv4(high, low)) {
+            return ipv4.get((int) low);
+        }
+        int slot = slot(high, low);
+        while (used[slot]) {
+            if (highs[slot] == high && lows[slot] == low) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public int size() {
+        return ipv4.size() + size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void forEach(IpIntConsumer consumer) {
+        ipv4.forEach((key, value) -> consumer.accept(0, IpAddress.IPV4_PREFIX | (key & 0xFFFF_FFFFL), value));
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) {
+                consumer.accept(highs[i], lows[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Записывает счётчики для контрольной точки (см. Checkpoint)
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        ipv4.writeTo(out);
+        out.writeInt(size);
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) {
+                IpAddress.writeTo(out, highs[i], lows[i]);
+                out.writeInt(values[i]);
+            }
+        }
+    }
+
+    public static IpCountMap readFrom(DataInput in) throws IOException {
+        IpCountMap map = new IpCountMap();
+        IntIntHashMap.readFrom(in).forEach((key, value) -> map.ipv4.increment(key, value));
+        int size = in.readInt();
+        long[] ip = new long[2];
+        for (int i = 0; i < size; i++) {
+            IpAddress.readFrom(in, ip);
+            map.increment(ip[0], ip[1], in.readInt());
+        }
+        return map;
+    }
+
+    public interface IpIntConsumer {
+        void accept(long high, long low, int value);
+    }
+
+    private int slot(long high, long low) {
+        return (int) IpAddress.hash(high, low) & mask;
+    }
+
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        lows = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldHighs[i], oldLows[i]);
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                highs[slot] = oldHighs[i];
+                lows[slot] = oldLows[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Space-Saving по IP-адресам в двоичном виде (см. IpAddress): позиции в куче ищутся по паре long
+ * в собственной таблице с открытой адресацией, поэтому offer(high, low) не создаёт объектов,
+ * пока адрес уже учитывается; IpAddress создаётся только для нового счётчика.
+ * Таблица рассчитана на capacity значений и не растёт.
+ */
+public class IpSpaceSaving extends SpaceSaving<IpAddress> {
+    private final long[] highs;
+    private final long[] lows;
+    private final int[] slots; // позиция в куче + 1, 0 - свободно
+    private final int mask;
+
+    public IpSpaceSaving(int capacity) {
+        super(capacity);
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2; // заполнение не больше половины
+        this.highs = new long[tableSize];
+        this.lows = new long[tableSize];
+        this.slots = new int[tableSize];
+        this.mask = tableSize - 1;
+    }
+
+    public void offer(long high, long low) {
+        int position = find(high, low);
+        offer(position < 0 ? new IpAddress(high, low) : null, position, 1, 0);
+    }
+
+    private int find(long high, long low) {
+        int slot = slot(high, low);
+        return slots[slot] != 0 ? slots[slot] - 1 : -1;
+    }
+
+    // ячейка адреса или свободная ячейка, где он должен быть
+    private int slot(long high, long low) {
+        int slot = (int) IpAddress.hash(high, low) & mask;
+        while (slots[slot] != 0 && (highs[slot] != high || lows[slot] != low)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    @Override
+    int find(IpAddress key) {
+        return find(key.getHigh(), key.getLow());
+    }
+
+    @Override
+    void index(IpAddress key, int position) {
+        int slot = slot(key.getHigh(), key.getLow());
+        highs[slot] = key.getHigh();
+        lows[slot] = key.getLow();
+        slots[slot] = position + 1;
+    }
+
+    @Override
+    void unindex(IpAddress key) {
+        int hole = slot(key.getHigh(), key.getLow());
+        if (slots[hole] == 0) {
+            return;
+        }
+        // сдвиг следующих значений цепочки на освободившееся место вместо пометки удаления
+        for (int slot = (hole + 1) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int home = (int) IpAddress.hash(highs[slot], lows[slot]) & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                highs[hole] = highs[slot];
+                lows[hole] = lows[slot];
+                slots[hole] = slots[slot];
+                hole = slot;
+            }
+        }
+        slots[hole] = 0;
+    }
+
+    @Override
+    void clearIndex() {
+        Arrays.fill(slots, 0);
+    }
+
+    public static IpSpaceSaving readFrom(DataInput in) throws IOException {
+        return SpaceSaving.readFrom(in, IpAddress::readFrom, IpSpaceSaving::new);
+    }
+}
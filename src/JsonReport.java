@@ -0,0 +1,175 @@
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Отчёт в формате JSON для пакетного режима: основные показатели статистики,
+ * самые частые значения и итоги по файлам. Строится вручную, без сторонних библиотек.
+ */
+public class JsonReport {
+    private final StringBuilder sb = new StringBuilder();
+
+    public static String build(BatchAnalyzer.BatchResult batch) {
+        return new JsonReport().append(batch).sb.toString();
+    }
+
+    private JsonReport append(BatchAnalyzer.BatchResult batch) {
+        Statistics statistics = batch.getTotal().getStatistics();
+        sb.append("{\n");
+        field("totalLines", batch.getTotal().getTotalLines());
+        field("entries", statistics.getEntryCount());
+        field("totalTraffic", statistics.getTotalTraffic());
+        field("trafficPerHour", statistics.getTrafficRate());
+        field("minTime", statistics.getMinTime() == null ? null : statistics.getMinTime().toString());
+        field("maxTime", statistics.getMaxTime() == null ? null : statistics.getMaxTime().toString());
+        field("approximate", statistics.getConfig().isApproximate());
+        field("averageVisitsPerHour", statistics.getAverageVisitsPerHour());
+        field("averageErrorsPerHour", statistics.getAverageErrorRequestsPerHour());
+        field("averageVisitsPerUser", statistics.getAverageVisitsPerUser());
+        field("errorRequests", statistics.getErrorRequests());
+        field("regularBrowserRequests", statistics.getRegularBrowserRequestsCount());
+        field("uniqueHumanUsers", statistics.getUniqueHumanUsers());
+        field("peakVisitsPerSecond", statistics.getPeakVisitsPerSecond());
+        field("peakSecond", statistics.getPeakSecondDateTime() == null ? null : statistics.getPeakSecondDateTime().toString());
+        field("refererDomains", statistics.getRefererDomainsCount());
+        field("maxVisitsPerUser", statistics.getMaxVisitsPerUser());
+        field("mostActiveUserIp", statistics.getMostActiveUserIp());
+        field("existingPages", statistics.getExistingPagesCount());
+        field("notExistingPages", statistics.getNonExistingPagesCount());
+
+        ParseFailures failures = batch.getTotal().getFailures();
+        sb.append("  \"failures\": {");
+        int written = 0;
+        for (ParseResult reason : ParseResult.values()) {
+            if (reason != ParseResult.OK && failures.get(reason) > 0) {
+                sb.append(written++ == 0 ? "" : ", ").append(quote(reason.name().toLowerCase(Locale.ROOT)))
+                        .append(": ").append(failures.get(reason));
+            }
+        }
+        sb.append("},\n");
+        field("truncatedLines", failures.getTruncated());
+
+        sb.append("  \"distributions\": {\n");
+        histogram("responseSize", statistics.getResponseSizeHistogram());
+        for (int statusClass = 1; statusClass <= 5; statusClass++) {
+            if (statistics.getResponseSizeHistogram(statusClass).getTotalCount() > 0) {
+                histogram("responseSize" + statusClass + "xx", statistics.getResponseSizeHistogram(statusClass));
+            }
+        }
+        if (statistics.getResponseSizeHistogram(0).getTotalCount() > 0) {
+            histogram("responseSizeOther", statistics.getResponseSizeHistogram(0));
+        }
+        histogram("requestsPerSecond", statistics.getRequestsPerSecondHistogram());
+        sb.setLength(sb.length() - 2);
+        sb.append("\n  },\n");
+
+        sb.append("  \"top\": {\n");
+        TopDimension[] dimensions = TopDimension.values();
+        for (int d = 0; d < dimensions.length; d++) {
+            sb.append("    ").append(quote(dimensions[d].name().toLowerCase(Locale.ROOT))).append(": [");
+            List<SpaceSaving.HeavyHitter<String>> top = statistics.getTop(dimensions[d]);
+            for (int i = 0; i < top.size(); i++) {
+                SpaceSaving.HeavyHitter<String> hitter = top.get(i);
+                sb.append(i == 0 ? "\n" : ",\n").append("      {\"value\": ").append(quote(hitter.getKey()))
+                        .append(", \"count\": ").append(hitter.getCount())
+                        .append(", \"error\": ").append(hitter.getError()).append('}');
+            }
+            sb.append(top.isEmpty() ? "]" : "\n    ]").append(d + 1 < dimensions.length ? ",\n" : "\n");
+        }
+        sb.append("  },\n");
+
+        sb.append("  \"hourly\": [");
+        TimeWindowSeries hours = statistics.getHourWindows();
+        List<TimeWindowSeries.Bucket> buckets = hours.getBuckets();
+        for (int i = 0; i < buckets.size(); i++) {
+            TimeWindowSeries.Bucket bucket = buckets.get(i);
+            sb.append(i == 0 ? "\n" : ",\n").append("    {\"start\": ")
+                    .append(quote(hours.toDateTime(bucket.getStartEpochSecond()).toString()))
+                    .append(", \"requests\": ").append(bucket.getRequests())
+                    .append(", \"errors\": ").append(bucket.getErrors())
+                    .append(", \"bytes\": ").append(bucket.getBytes())
+                    .append(", \"uniqueUsers\": ").append(bucket.getUniqueUsers()).append('}');
+        }
+        sb.append(buckets.isEmpty() ? "],\n" : "\n  ],\n");
+
+        sb.append("  \"elapsedMillis\": ").append(batch.getMillis()).append(",\n");
+        sb.append("  \"files\": [");
+        List<BatchAnalyzer.FileResult> files = batch.getFiles();
+        for (int i = 0; i < files.size(); i++) {
+            BatchAnalyzer.FileResult file = files.get(i);
+            sb.append(i == 0 ? "\n" : ",\n").append("    {\"path\": ").append(quote(file.getPath().toString()))
+                    .append(", \"bytes\": ").append(file.getBytes())
+                    .append(", \"millis\": ").append(file.getMillis())
+                    .append(", \"megabytesPerSecond\": ").append(number(file.getMegabytesPerSecond()));
+            if (file.getError() == null) {
+                sb.append(", \"lines\": ").append(file.getLines())
+                        .append(", \"entries\": ").append(file.getEntries());
+            } else {
+                sb.append(", \"error\": ").append(quote(file.getError()));
+            }
+            sb.append('}');
+        }
+        sb.append(files.isEmpty() ? "]\n" : "\n  ]\n");
+        sb.append("}\n");
+        return this;
+    }
+
+    // количество, среднее и процентили гистограммы одним объектом
+    private void histogram(String name, LogHistogram histogram) {
+        sb.append("    ").append(quote(name)).append(": {\"count\": ").append(histogram.getTotalCount())
+                .append(", \"mean\": ").append(number(histogram.getMean()))
+                .append(", \"p50\": ").append(histogram.getValueAtPercentile(50))
+                .append(", \"p90\": ").append(histogram.getValueAtPercentile(90))
+                .append(", \"p99\": ").append(histogram.getValueAtPercentile(99))
+                .append(", \"p999\": ").append(histogram.getValueAtPercentile(99.9))
+                .append(", \"max\": ").append(histogram.getMax()).append("},\n");
+    }
+
+    private void field(String name, Object value) {
+        sb.append("  ").append(quote(name)).append(": ");
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof String) {
+            sb.append(quote((String) value));
+        } else if (value instanceof Double) {
+            sb.append(number((Double) value));
+        } else {
+            sb.append(value);
+        }
+        sb.append(",\n");
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
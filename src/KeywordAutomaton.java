@@ -0,0 +1,168 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Автомат Ахо-Корасик для поиска множества ключевых слов за один проход по строке.
+ * Поиск нечувствителен к регистру (для латиницы). Каждому слову назначается метка 0..63,
+ * результат поиска - битовая маска меток найденных слов; несколько слов могут иметь одну метку.
+ * Символ '|' в начале или в конце слова требует, чтобы перед словом или после него
+ * стояла не латинская буква (или начало/конец строки), например "bot|" не найдётся в "botanical".
+ * Автомат неизменяем и может использоваться из нескольких потоков.
+ */
+public class KeywordAutomaton {
+    private static final int ALPHABET = 128; // символы вне ASCII не входят в ключевые слова
+
+    private final int[] transitions; // полная таблица переходов: state * ALPHABET + символ
+    private final long[] plainTags; // метки слов без границ, оканчивающихся в состоянии
+    private final int[][] boundedKeywords; // слова с границами, оканчивающиеся в состоянии
+    private final int[] keywordLengths;
+    private final boolean[] boundaryBefore;
+    private final boolean[] boundaryAfter;
+    private final int[] keywordTags;
+
+    public KeywordAutomaton(List<String> keywords, int[] tags) {
+        if (keywords.size() != tags.length) {
+            throw new IllegalArgumentException("Количество меток не совпадает с количеством слов");
+        }
+        int count = keywords.size();
+        keywordLengths = new int[count];
+        boundaryBefore = new boolean[count];
+        boundaryAfter = new boolean[count];
+        keywordTags = tags.clone();
+
+        // бор из ключевых слов
+        List<int[]> children = new ArrayList<>();
+        List<List<Integer>> outputs = new ArrayList<>();
+        children.add(newNode());
+        outputs.add(new ArrayList<>());
+        for (int k = 0; k < count; k++) {
+            String keyword = keywords.get(k);
+            if (tags[k] < 0 || tags[k] > 63) {
+                throw new IllegalArgumentException("Метка должна быть в диапазоне 0..63: " + tags[k]);
+            }
+            boundaryBefore[k] = keyword.startsWith("|");
+            boundaryAfter[k] = keyword.length() > 1 && keyword.endsWith("|");
+            String word = keyword.substring(boundaryBefore[k] ? 1 : 0,
+                    keyword.length() - (boundaryAfter[k] ? 1 : 0));
+            if (word.isEmpty()) {
+                throw new IllegalArgumentException("Пустое ключевое слово: '" + keyword + "'");
+            }
+            keywordLengths[k] = word.length();
+            int state = 0;
+            for (int i = 0; i < word.length(); i++) {
+                char c = lower(word.charAt(i));
+                if (c >= ALPHABET) {
+                    throw new IllegalArgumentException("Ключевое слово должно состоять из ASCII-символов: " + keyword);
+                }
+                int next = children.get(state)[c];
+                if (next < 0) {
+                    next = children.size();
+                    children.add(newNode());
+                    outputs.add(new ArrayList<>());
+                    children.get(state)[c] = next;
+                }
+                state = next;
+            }
+            outputs.get(state).add(k);
+        }
+
+        // суффиксные ссылки обходом в ширину; переходы достраиваются до полного автомата
+        int states = children.size();
+        transitions = new int[states * ALPHABET];
+        int[] fail = new int[states];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = children.get(0)[c];
+            transitions[c] = Math.max(next, 0);
+            if (next > 0) {
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs.get(state).addAll(outputs.get(fail[state]));
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = children.get(state)[c];
+                if (next >= 0) {
+                    fail[next] = transitions[fail[state] * ALPHABET + c];
+                    transitions[state * ALPHABET + c] = next;
+                    queue.add(next);
+                } else {
+                    transitions[state * ALPHABET + c] = transitions[fail[state] * ALPHABET + c];
+                }
+            }
+        }
+
+        plainTags = new long[states];
+        boundedKeywords = new int[states][];
+        for (int state = 0; state < states; state++) {
+            List<Integer> bounded = new ArrayList<>();
+            for (int k : outputs.get(state)) {
+                if (boundaryBefore[k] || boundaryAfter[k]) {
+                    bounded.add(k);
+                } else {
+                    plainTags[state] |= 1L << tags[k];
+                }
+            }
+            if (!bounded.isEmpty()) {
+                boundedKeywords[state] = bounded.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+    }
+
+    /**
+     * Возвращает битовую маску меток всех слов, найденных в text
+     */
+    public long match(CharSequence text) {
+        long found = 0;
+        int state = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = lower(text.charAt(i));
+            state = transitions[state * ALPHABET + (c < ALPHABET ? c : 0)];
+            found |= plainTags[state];
+            int[] bounded = boundedKeywords[state];
+            if (bounded != null) {
+                for (int k : bounded) {
+                    long tag = 1L << keywordTags[k];
+                    if ((found & tag) == 0 && boundariesMatch(text, i, k)) {
+                        found |= tag;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private boolean boundariesMatch(CharSequence text, int end, int keyword) {
+        if (boundaryBefore[keyword]) {
+            int before = end - keywordLengths[keyword];
+            if (before >= 0 && isLetter(text.charAt(before))) {
+                return false;
+            }
+        }
+        if (boundaryAfter[keyword]) {
+            int after = end + 1;
+            return after >= text.length() || !isLetter(text.charAt(after));
+        }
+        return true;
+    }
+
+    private static int[] newNode() {
+        int[] node = new int[ALPHABET];
+        Arrays.fill(node, -1);
+        return node;
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c | 0x20) : c;
+    }
+
+    private static boolean isLetter(char c) {
+        c = lower(c);
+        return c >= 'a' && c <= 'z';
+    }
+}
@@ -1,109 +1,125 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Locale;
+import java.time.ZoneOffset;
 
 public class LogEntry {
-    private final String ipAddress;
-    private final LocalDateTime dateTime;
+    private final long ipHigh; // адрес клиента в двоичном виде, см. IpAddress
+    private final long ipLow;
+    private final long epochSecond;
+    private final int offsetSeconds;
     private final HttpMethod method;
+    // пути, referer и User-Agent хранятся номерами в общих словарях StringDictionary;
+    // строка хранится в записи, только если словарь заполнен и номер не выдан
+    private final int pathId;
     private final String path;
     private final int responseCode;
     private final int dataSize;
+    private final int refererId;
     private final String referer;
+    private final int userAgentId;
     private final UserAgent userAgent;
 
+    private static final ThreadLocal<LogLineParser> PARSER = ThreadLocal.withInitial(LogLineParser::new);
+
     public LogEntry(String logLine) {
         // разбор строки лога
-        String[] parts = parseLogLine(logLine);
-
-        this.ipAddress = parts[0];
-        this.dateTime = parseDateTime(parts[1]);
-        this.method = parseHttpMethod(parts[2]);
-        this.path = parts[3];
-        this.responseCode = Integer.parseInt(parts[4]);
-        this.dataSize = Integer.parseInt(parts[5]);
-        this.referer = parts[6].equals("-") ? null : parts[6];
-        this.userAgent = new UserAgent(parts[7]);
+        this(parseLogLine(logLine));
     }
 
-    private String[] parseLogLine(String logLine) {
-        // Формат: IP - - [дата] "метод путь протокол" код размер "referer" "user-agent"
-        String[] result = new String[8];
-        // Разделяем по пробелам, но учитываем строки в кавычках и скобках
-        String[] tokens = logLine.split(" ");
-        // IP адрес
-        result[0] = tokens[0];
-        // Дата и время (объединяем токены в скобках)
-        StringBuilder dateBuilder = new StringBuilder();
-        for (int i = 3; i < tokens.length; i++) {
-            if (tokens[i].startsWith("[")) {
-                dateBuilder.append(tokens[i].substring(1));
-            } else if (tokens[i].endsWith("]")) {
-                dateBuilder.append(" ").append(tokens[i].substring(0, tokens[i].length() - 1));
-                break;
-            } else {
-                dateBuilder.append(" ").append(tokens[i]);
-            }
-        }
-        result[1] = dateBuilder.toString();
-        // Находим начало запроса
-        int requestStart = -1;
-        for (int i = 0; i < tokens.length; i++) {
-            if (tokens[i].startsWith("\"") && !tokens[i].equals("\"-\"")) {
-                requestStart = i;
-                break;
-            }
-        }
-        if (requestStart != -1) {
-            // Метод и путь
-            String request = tokens[requestStart] + " " + tokens[requestStart + 1] + " " + tokens[requestStart + 2];
-            request = request.replace("\"", "");
-            String[] requestParts = request.split(" ");
-            result[2] = requestParts[0]; // метод
-            result[3] = requestParts[1]; // путь
-            // Код ответа и размер данных
-            result[4] = tokens[requestStart + 3]; // код
-            result[5] = tokens[requestStart + 4]; // размер
-            // Referer
-            result[6] = tokens[requestStart + 5].replace("\"", "");
-            if (result[6].equals("-")) {
-                result[6] = "-";
-            }
+    /**
+     * Создаёт запись по результату последнего успешного разбора parser
+     */
+    LogEntry(LogLineParser parser) {
+        this.ipHigh = parser.getIpHigh();
+        this.ipLow = parser.getIpLow();
+        this.epochSecond = parser.getEpochSecond();
+        this.offsetSeconds = parser.getOffsetSeconds();
+        this.method = parser.getMethod();
+        this.pathId = parser.getPathId(StringDictionary.paths());
+        this.path = pathId == StringDictionary.NO_ID ? parser.getPath() : null;
+        this.responseCode = parser.getResponseCode();
+        this.dataSize = parser.getDataSize();
+        this.refererId = parser.getRefererId(StringDictionary.referers());
+        this.referer = refererId == StringDictionary.NO_ID ? parser.getReferer() : null;
+        this.userAgentId = parser.getUserAgentId(StringDictionary.userAgents());
+        String userAgentString = userAgentId == StringDictionary.NO_ID
+                ? parser.getUserAgent()
+                : StringDictionary.userAgents().get(userAgentId);
+        this.userAgent = UserAgentCache.shared().get(userAgentString);
+    }
 
-            // UserAgent (объединяем все оставшиеся токены)
-            StringBuilder userAgentBuilder = new StringBuilder();
-            for (int i = requestStart + 6; i < tokens.length; i++) {
-                userAgentBuilder.append(tokens[i]).append(" ");
-            }
-            String userAgent = userAgentBuilder.toString().trim();
-            result[7] = userAgent.replace("\"", "");
-        }
+    /**
+     * Создаёт запись из уже разобранных полей, например прочитанных из ColumnStore;
+     * строки path и referer нужны, только если соответствующий номер - NO_ID
+     */
+    LogEntry(long ipHigh, long ipLow, long epochSecond, int offsetSeconds, HttpMethod method, int pathId, String path,
+             int responseCode, int dataSize, int refererId, String referer, int userAgentId, UserAgent userAgent) {
+        this.ipHigh = ipHigh;
+        this.ipLow = ipLow;
+        this.epochSecond = epochSecond;
+        this.offsetSeconds = offsetSeconds;
+        this.method = method;
+        this.pathId = pathId;
+        this.path = pathId == StringDictionary.NO_ID ? path : null;
+        this.responseCode = responseCode;
+        this.dataSize = dataSize;
+        this.refererId = refererId;
+        this.referer = refererId == StringDictionary.NO_ID ? referer : null;
+        this.userAgentId = userAgentId;
+        this.userAgent = userAgent;
+    }
 
-        return result;
-    }
-    private LocalDateTime parseDateTime(String dateTimeString) {
-        // Формат: 13/Dec/2024:10:15:32 +0300
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
-        return LocalDateTime.parse(dateTimeString, formatter);
-    }
-    private HttpMethod parseHttpMethod(String methodString) {
-        try {
-            return HttpMethod.valueOf(methodString.toUpperCase());
-        } catch (IllegalArgumentException e) {
-            return HttpMethod.GET; // значение по умолчанию
+    private static LogLineParser parseLogLine(String logLine) {
+        byte[] bytes = logLine.getBytes(StandardCharsets.UTF_8);
+        LogLineParser parser = PARSER.get();
+        if (!parser.parse(ByteBuffer.wrap(bytes), 0, bytes.length)) {
+            throw new IllegalArgumentException("Строка не соответствует формату лога");
         }
+        return parser;
     }
+
+    /**
+     * Текстовый вид адреса, строится при каждом вызове
+     */
     public String getIpAddress() {
-        return ipAddress;
+        return IpAddress.format(ipHigh, ipLow);
     }
+    public long getIpHigh() {
+        return ipHigh;
+    }
+    public long getIpLow() {
+        return ipLow;
+    }
+    public boolean isIpv4() {
+        return IpAddress.isIpv4(ipHigh, ipLow);
+    }
+    /**
+     * Местное время запроса (в часовом поясе, указанном в строке лога)
+     */
     public LocalDateTime getDateTime() {
-        return dateTime;
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.ofTotalSeconds(offsetSeconds));
+    }
+    /**
+     * Время запроса в секундах от 1970-01-01T00:00:00Z
+     */
+    public long getEpochSecond() {
+        return epochSecond;
+    }
+    public int getOffsetSeconds() {
+        return offsetSeconds;
     }
     public HttpMethod getMethod() {
         return method;
     }
     public String getPath() {
-        return path;
+        return pathId == StringDictionary.NO_ID ? path : StringDictionary.paths().get(pathId);
+    }
+    /**
+     * Номер пути в StringDictionary.paths() или StringDictionary.NO_ID
+     */
+    public int getPathId() {
+        return pathId;
     }
     public int getResponseCode() {
         return responseCode;
@@ -112,7 +128,19 @@ public class LogEntry {
         return dataSize;
     }
     public String getReferer() {
-        return referer;
+        return refererId == StringDictionary.NO_ID ? referer : StringDictionary.referers().get(refererId);
+    }
+    /**
+     * Номер referer в StringDictionary.referers() или StringDictionary.NO_ID (в том числе если referer не указан)
+     */
+    public int getRefererId() {
+        return refererId;
+    }
+    /**
+     * Номер строки User-Agent в StringDictionary.userAgents() или StringDictionary.NO_ID
+     */
+    public int getUserAgentId() {
+        return userAgentId;
     }
     public UserAgent getUserAgent() {
         return userAgent;
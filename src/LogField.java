@@ -0,0 +1,7 @@
+/**
+ * Поля строки лога в порядке их следования в строке.
+ * Набор полей передаётся в LogLineParser, чтобы разбор останавливался после последнего нужного поля.
+ */
+public enum LogField {
+    IP, TIME, METHOD, PATH, STATUS, SIZE, REFERER, USER_AGENT
+}
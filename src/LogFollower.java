@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Слежение за растущим логом (как tail -f): новые строки добавляются в одну долгоживущую Statistics.
+ * Файл периодически опрашивается; читаются только байты после последней обработанной полной строки,
+ * поэтому затраты зависят от скорости записи, а не от размера файла.
+ * Ротация определяется по смене inode: старый файл дочитывается до конца через открытый канал,
+ * после чего чтение нового файла начинается с нуля. Уменьшение размера при том же inode
+ * (ротация copytruncate) означает, что файл обрезан, и чтение продолжается с начала.
+ * Экземпляр не потокобезопасен: poll и run вызываются из одного потока, из других потоков - только stop.
+ */
+public class LogFollower {
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = 1000;
+
+    private final Path path;
+    private final StatisticsConfig config;
+    private Statistics statistics;
+    private final LogLineParser parser = new LogLineParser();
+    private final LongLinePolicy longLines = LongLinePolicy.fromSystemProperties();
+    private final ByteBuffer probe = ByteBuffer.allocate(8192);
+    // остановка без прерывания потока: прерывание закрыло бы FileChannel посреди чтения
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private FileChannel channel;
+    private Object fileKey; // inode открытого файла
+    private long offset; // начало первой необработанной строки в открытом файле
+    private long totalLines;
+    private ParseFailures failures = new ParseFailures();
+    private int rotations;
+    private int truncations;
+
+    public LogFollower(Path path, StatisticsConfig config) {
+        this.path = path;
+        this.config = config;
+        this.statistics = new Statistics(config);
+    }
+
+    /**
+     * Пропускает уже записанное содержимое файла: будут учтены только строки, добавленные позже
+     */
+    public void skipExisting() throws IOException {
+        if (open()) {
+            offset = lineEnd(channel.size());
+        }
+    }
+
+    /**
+     * Продолжает с контрольной точки (см. Checkpoint), если она относится к текущему файлу:
+     * статистика и позиция берутся из неё. Возвращает false, если точки нет или она не подходит.
+     */
+    public boolean restore(Path checkpointFile) throws IOException {
+        if (!Files.exists(checkpointFile) || !open()) {
+            return false;
+        }
+        String reason;
+        Checkpoint checkpoint = null;
+        try {
+            checkpoint = Checkpoint.load(checkpointFile);
+            reason = checkpoint.mismatch(channel, config);
+        } catch (IOException e) {
+            reason = e.getMessage();
+        }
+        if (reason != null) {
+            System.err.println("Контрольная точка " + checkpointFile + " не подходит (" + reason + ")");
+            return false;
+        }
+        statistics = checkpoint.getResult().getStatistics();
+        totalLines = checkpoint.getResult().getTotalLines();
+        failures = checkpoint.getResult().getFailures();
+        offset = checkpoint.getOffset();
+        return true;
+    }
+
+    /**
+     * Записывает контрольную точку: накопленную статистику и позицию после последней полной строки
+     */
+    public void saveCheckpoint(Path checkpointFile) throws IOException {
+        if (channel != null) {
+            Checkpoint.create(path, channel, offset, getResult()).save(checkpointFile);
+        }
+    }
+
+    /**
+     * Один опрос файла: обрабатывает все дописанные полные строки.
+     * Возвращает количество прочитанных строк.
+     */
+    public long poll() throws IOException {
+        long before = totalLines;
+        Object currentKey;
+        long size;
+        try {
+            currentKey = fileKey(path);
+            size = Files.size(path);
+        } catch (NoSuchFileException e) {
+            // файл переименован, а новый ещё не создан: дочитываем то, что успели дописать в старый
+            if (channel != null) {
+                readTo(lineEnd(channel.size()));
+            }
+            return totalLines - before;
+        }
+
+        if (channel != null && !currentKey.equals(fileKey)) {
+            // ротация переименованием: хвост старого файла, включая последнюю строку без перевода строки
+            readTo(channel.size());
+            close();
+            rotations++;
+        }
+        if (channel == null && !open()) {
+            return totalLines - before;
+        }
+        if (size < offset) {
+            // copytruncate: файл скопирован и обрезан, строки, дописанные до обрезки после опроса, потеряны
+            offset = 0;
+            truncations++;
+        }
+        readTo(lineEnd(channel.size()));
+        return totalLines - before;
+    }
+
+    /**
+     * Опрашивает файл каждые pollIntervalMillis, раз в reportIntervalMillis передаёт текущий результат reporter.
+     * Работает до вызова stop или прерывания потока; перед выходом выполняется последний опрос и отчёт.
+     */
+    public void run(long pollIntervalMillis, long reportIntervalMillis, Consumer<AnalysisResult> reporter)
+            throws IOException {
+        long nextReport = System.currentTimeMillis() + reportIntervalMillis;
+        try {
+            do {
+                poll();
+                if (System.currentTimeMillis() >= nextReport) {
+                    reporter.accept(getResult());
+                    nextReport = System.currentTimeMillis() + reportIntervalMillis;
+                }
+            } while (!stopped.await(pollIntervalMillis, TimeUnit.MILLISECONDS));
+            poll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            reporter.accept(getResult());
+            close();
+        }
+    }
+
+    /**
+     * Просит run завершиться после текущего опроса; можно вызывать из любого потока
+     */
+    public void stop() {
+        stopped.countDown();
+    }
+
+    /**
+     * Накопленный результат; статистика продолжает обновляться при следующих опросах
+     */
+    public AnalysisResult getResult() {
+        return new AnalysisResult(statistics, totalLines, failures);
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getRotations() {
+        return rotations;
+    }
+
+    public int getTruncations() {
+        return truncations;
+    }
+
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private boolean open() throws IOException {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        fileKey = fileKey(path);
+        offset = 0;
+        return true;
+    }
+
+    private void readTo(long end) throws IOException {
+        if (end <= offset) {
+            return;
+        }
+        totalLines += new MappedLogReader(path).read(channel, offset, end, new ParsingLineHandler(parser,
+                parsed -> statistics.addEntry(new LogEntry(parsed)), failures, Quarantine.shared(), longLines,
+                path.toString(), totalLines));
+        offset = end;
+    }
+
+    // позиция после последнего перевода строки до size; незавершённая строка ждёт следующего опроса
+    private long lineEnd(long size) throws IOException {
+        long position = size;
+        while (position > offset) {
+            int length = (int) Math.min(probe.capacity(), position - offset);
+            probe.clear().limit(length);
+            while (probe.hasRemaining() && channel.read(probe, position - length + probe.position()) > 0) {
+            }
+            for (int i = probe.position() - 1; i >= 0; i--) {
+                if (probe.get(i) == '\n') {
+                    return position - length + i + 1;
+                }
+            }
+            position -= length;
+        }
+        return offset;
+    }
+
+    // номер inode, а если файловая система его не сообщает - ключ файла JVM
+    static Object fileKey(Path path) throws IOException {
+        try {
+            return Files.getAttribute(path, "unix:ino");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            return key != null ? key : path.toRealPath();
+        }
+    }
+}
@@ -0,0 +1,643 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Генератор синтетического лога в формате, который разбирает LogLineParser.
+ * При одинаковых настройках и зерне выдаёт байт в байт одинаковый результат.
+ * IP, пути, User-Agent и referer выбираются по закону Ципфа (немногие значения встречаются очень часто),
+ * есть доля ботов, всплески ошибок 5xx, пики нагрузки (много запросов за короткое время),
+ * длинные User-Agent у самой границы MappedLogReader.MAX_LINE_LENGTH и доля испорченных строк.
+ * Строки собираются сразу в байты, поэтому файл пишется со скоростью диска.
+ * Объект настроек неизменяем: методы with... возвращают копию.
+ */
+public class LogGenerator {
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+    private static final String[] METHODS = {"GET", "GET", "GET", "GET", "GET", "GET", "POST", "POST", "HEAD", "PUT", "DELETE", "OPTIONS"};
+    private static final int[] SUCCESS_CODES = {200, 200, 200, 200, 200, 200, 200, 200, 301, 302, 304, 206};
+    private static final int[] CLIENT_ERROR_CODES = {404, 404, 404, 403, 400, 401, 429};
+    private static final int[] SERVER_ERROR_CODES = {500, 502, 503, 504};
+    private static final String[] PATH_TEMPLATES = {
+            "/catalog/", "/product/", "/api/v1/items/", "/news/", "/static/js/app.", "/images/", "/user/", "/search?q="
+    };
+    private static final String[] PATH_SUFFIXES = {"", "", "", "/reviews", ".js", ".png", "/profile", "&page=2"};
+    private static final String[] BROWSERS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/%d.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/%d.1 Safari/605.1.15",
+            "Mozilla/5.0 (X11; Linux x86_64; rv:%d.0) Gecko/20100101 Firefox/%<d.0",
+            "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/%d.0.6099.43 Mobile Safari/537.36",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_1 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/%d.1 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/%d.0.0.0 Safari/537.36 Edg/%<d.0.2210.61",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/%d.0.0.0 Safari/537.36 OPR/105.0.0.0",
+            "curl/8.%d.0",
+            "python-requests/2.%d.0",
+    };
+    private static final String[] BOTS = {
+            "Mozilla/5.0 (compatible; Googlebot/2.%d; +http://www.google.com/bot.html)",
+            "Mozilla/5.0 (compatible; YandexBot/3.%d; +http://yandex.com/bots)",
+            "Mozilla/5.0 (compatible; bingbot/2.%d; +http://www.bing.com/bingbot.htm)",
+            "Mozilla/5.0 (compatible; AhrefsBot/7.%d; +http://ahrefs.com/robot/)",
+            "Mozilla/5.0 (compatible; SemrushBot/7~bl%d; +http://www.semrush.com/bot.html)",
+    };
+    private static final String[] REFERER_DOMAINS = {
+            "www.google.com", "yandex.ru", "nova-news.ru", "t.me", "vk.com", "github.com", "habr.com", "dzen.ru"
+    };
+
+    private final long seed;
+    private final long targetBytes;
+    private final long startEpochSecond;
+    private final long spanSeconds;
+    private final int zoneOffsetSeconds;
+    private final int ipCount;
+    private final int pathCount;
+    private final int userAgentCount;
+    private final int refererCount;
+    private final double zipfExponent;
+    private final double botRatio;
+    private final double malformedRatio;
+    private final double longUserAgentRatio;
+
+    /**
+     * Настройки по умолчанию: 100 МБ за трое суток с 2024-12-01, 100 000 IP, 10 000 путей,
+     * 500 User-Agent, 200 referer, показатель Ципфа 1.1, 30% ботов, 0.1% испорченных строк
+     */
+    public LogGenerator(long seed) {
+        this(seed, 100L * 1024 * 1024, LocalDateTime.of(2024, 12, 1, 0, 0).toEpochSecond(ZoneOffset.ofHours(3)),
+                3 * 86400, 3 * 3600, 100_000, 10_000, 500, 200, 1.1, 0.3, 0.001, 0.001);
+    }
+
+    private LogGenerator(long seed, long targetBytes, long startEpochSecond, long spanSeconds, int zoneOffsetSeconds,
+                         int ipCount, int pathCount, int userAgentCount, int refererCount, double zipfExponent,
+                         double botRatio, double malformedRatio, double longUserAgentRatio) {
+        if (targetBytes < 1 || spanSeconds < 1 || ipCount < 1 || pathCount < 1 || userAgentCount < 1 || refererCount < 1) {
+            throw new IllegalArgumentException("Размер, интервал времени и количества значений должны быть положительными");
+        }
+        if (zipfExponent <= 0 || !isRatio(botRatio) || !isRatio(malformedRatio) || !isRatio(longUserAgentRatio)) {
+            throw new IllegalArgumentException("Показатель Ципфа должен быть положительным, доли - от 0 до 1");
+        }
+        this.seed = seed;
+        this.targetBytes = targetBytes;
+        this.startEpochSecond = startEpochSecond;
+        this.spanSeconds = spanSeconds;
+        this.zoneOffsetSeconds = zoneOffsetSeconds;
+        this.ipCount = ipCount;
+        this.pathCount = pathCount;
+        this.userAgentCount = userAgentCount;
+        this.refererCount = refererCount;
+        this.zipfExponent = zipfExponent;
+        this.botRatio = botRatio;
+        this.malformedRatio = malformedRatio;
+        this.longUserAgentRatio = longUserAgentRatio;
+    }
+
+    private static boolean isRatio(double value) {
+        return value >= 0 && value <= 1;
+    }
+
+    /**
+     * Примерный размер файла в байтах (генерация останавливается на первой строке после него)
+     */
+    public LogGenerator withSize(long bytes) {
+        return new LogGenerator(seed, bytes, startEpochSecond, spanSeconds, zoneOffsetSeconds, ipCount, pathCount,
+                userAgentCount, refererCount, zipfExponent, botRatio, malformedRatio, longUserAgentRatio);
+    }
+
+    /**
+     * Время первой записи (местное, со смещением часового пояса offsetSeconds) и длина интервала в секундах
+     */
+    public LogGenerator withTimeSpan(LocalDateTime start, int offsetSeconds, long seconds) {
+        return new LogGenerator(seed, targetBytes, start.toEpochSecond(ZoneOffset.ofTotalSeconds(offsetSeconds)), seconds,
+                offsetSeconds, ipCount, pathCount, userAgentCount, refererCount, zipfExponent, botRatio,
+                malformedRatio, longUserAgentRatio);
+    }
+
+    /**
+     * Количество различных IP, путей, User-Agent и referer
+     */
+    public LogGenerator withCardinalities(int ips, int paths, int userAgents, int referers) {
+        return new LogGenerator(seed, targetBytes, startEpochSecond, spanSeconds, zoneOffsetSeconds, ips, paths,
+                userAgents, referers, zipfExponent, botRatio, malformedRatio, longUserAgentRatio);
+    }
+
+    public LogGenerator withZipfExponent(double exponent) {
+        return new LogGenerator(seed, targetBytes, startEpochSecond, spanSeconds, zoneOffsetSeconds, ipCount, pathCount,
+                userAgentCount, refererCount, exponent, botRatio, malformedRatio, longUserAgentRatio);
+    }
+
+    public LogGenerator withBotRatio(double ratio) {
+        return new LogGenerator(seed, targetBytes, startEpochSecond, spanSeconds, zoneOffsetSeconds, ipCount, pathCount,
+                userAgentCount, refererCount, zipfExponent, ratio, malformedRatio, longUserAgentRatio);
+    }
+
+    public LogGenerator withMalformedRatio(double ratio) {
+        return new LogGenerator(seed, targetBytes, startEpochSecond, spanSeconds, zoneOffsetSeconds, ipCount, pathCount,
+                userAgentCount, refererCount, zipfExponent, botRatio, ratio, longUserAgentRatio);
+    }
+
+    public LogGenerator withLongUserAgentRatio(double ratio) {
+        return new LogGenerator(seed, targetBytes, startEpochSecond, spanSeconds, zoneOffsetSeconds, ipCount, pathCount,
+                userAgentCount, refererCount, zipfExponent, botRatio, malformedRatio, ratio);
+    }
+
+    /**
+     * Пишет лог в out (поток не закрывается), возвращает количество строк
+     */
+    public long writeTo(OutputStream out) throws IOException {
+        Session session = new Session(targetBytes, 200);
+        byte[] chunk = new byte[CHUNK_SIZE]; // строки копятся в блок и пишутся одним вызовом
+        int used = 0;
+        long lines = 0;
+        long written = 0;
+        while (written < targetBytes) {
+            int length = session.nextLine(written);
+            if (used + length > chunk.length) {
+                out.write(chunk, 0, used);
+                used = 0;
+            }
+            System.arraycopy(session.line, 0, chunk, used, length);
+            used += length;
+            written += length;
+            lines++;
+        }
+        out.write(chunk, 0, used);
+        out.flush();
+        return lines;
+    }
+
+    /**
+     * Пишет лог в файл; для имени на .gz файл сжимается (размер задаёт объём до сжатия)
+     */
+    public long writeTo(Path file) throws IOException {
+        try (OutputStream out = file.getFileName().toString().endsWith(".gz")
+                ? new GZIPOutputStream(Files.newOutputStream(file), 1 << 16)
+                : Files.newOutputStream(file)) {
+            return writeTo(out);
+        }
+    }
+
+    /**
+     * count строк в памяти, для тестов и бенчмарков; время распределяется по всему интервалу
+     */
+    public List<String> lines(int count) {
+        Session session = new Session(count, 1);
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = session.nextLine(i);
+            lines.add(new String(session.line, 0, length - 1, StandardCharsets.UTF_8)); // без перевода строки
+        }
+        return lines;
+    }
+
+    /**
+     * count строк User-Agent с той же долей ботов и тем же распределением, что и в логе
+     */
+    public List<String> userAgents(int count) {
+        Session session = new Session(count, 1);
+        List<String> agents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            agents.add(session.userAgent());
+        }
+        return agents;
+    }
+
+    /**
+     * Состояние одного прохода генерации; progress - доля сгенерированного (в байтах или строках) от total
+     */
+    private class Session {
+        private final SplittableRandom random = new SplittableRandom(seed);
+        private final ZipfSampler ips = new ZipfSampler(ipCount, zipfExponent);
+        private final ZipfSampler paths = new ZipfSampler(pathCount, zipfExponent);
+        private final ZipfSampler agents = new ZipfSampler(userAgentCount, zipfExponent);
+        private final ZipfSampler referers = new ZipfSampler(refererCount, zipfExponent);
+        private final byte[][] browserAgents = new byte[userAgentCount][];
+        private final byte[][] botAgents = new byte[userAgentCount][];
+        private final double total;
+        private final byte[] line = new byte[MappedLogReader.MAX_LINE_LENGTH + 2];
+        private int length;
+
+        private double time; // секунды от начала интервала
+        private double averageLine; // средняя длина строки в байтах (1 при подсчёте в строках), уточняется по ходу
+        private long lines;
+        private int burstLeft; // строк до конца всплеска ошибок
+        private int spikeLeft; // строк до конца пика нагрузки
+        private long cachedSecond = Long.MIN_VALUE;
+        private final byte[] cachedTime = new byte[26];
+
+        Session(double total, double averageLine) {
+            this.total = total;
+            this.averageLine = averageLine;
+        }
+
+        // собирает следующую строку с переводом строки в line, возвращает её длину в байтах
+        int nextLine(double progress) {
+            advanceTime(progress);
+            if (burstLeft > 0) {
+                burstLeft--;
+            } else if (random.nextInt(20_000) == 0) {
+                burstLeft = 200 + random.nextInt(2000);
+            }
+            length = 0;
+            if (random.nextDouble() < malformedRatio) {
+                malformed();
+            } else {
+                wellFormed();
+            }
+            line[length++] = '\n';
+            lines++;
+            if (averageLine > 1) {
+                averageLine += (length - averageLine) / Math.min(lines, 10_000);
+            }
+            return length;
+        }
+
+        // время идёт так, чтобы к концу объёма дойти до конца интервала; во время пика - в 50 раз медленнее
+        private void advanceTime(double progress) {
+            if (spikeLeft > 0) {
+                spikeLeft--;
+            } else if (random.nextInt(50_000) == 0) {
+                spikeLeft = 1000 + random.nextInt(5000);
+            }
+            double remainingLines = Math.max(1, (total - progress) / averageLine);
+            double gap = (spanSeconds - 1 - time) / remainingLines;
+            if (gap > 0) {
+                time += random.nextDouble() * 2 * gap / (spikeLeft > 0 ? 50 : 1);
+                time = Math.min(time, spanSeconds - 1);
+            }
+        }
+
+        private void wellFormed() {
+            boolean bot = random.nextDouble() < botRatio;
+            appendIp(ips.sample(random));
+            append(" - - [");
+            appendTime();
+            append("] \"");
+            append(METHODS[random.nextInt(METHODS.length)]);
+            line[length++] = ' ';
+            int code = responseCode();
+            appendPath(paths.sample(random), code == 404);
+            append(" HTTP/1.1\" ");
+            appendNumber(code);
+            line[length++] = ' ';
+            appendNumber(code == 304 ? 0 : random.nextInt(bot ? 20_000 : 150_000));
+            append(" \"");
+            if (bot || random.nextInt(5) < 2) {
+                line[length++] = '-';
+            } else {
+                appendReferer(referers.sample(random));
+            }
+            append("\" \"");
+            int agentStart = length;
+            byte[] agent = agentBytes(bot, agents.sample(random));
+            System.arraycopy(agent, 0, line, length, agent.length);
+            length += agent.length;
+            if (random.nextDouble() < longUserAgentRatio) {
+                // длинный User-Agent: строка длиной от MAX_LINE_LENGTH - 63 до MAX_LINE_LENGTH символов
+                int target = MappedLogReader.MAX_LINE_LENGTH - 1 - random.nextInt(64);
+                String padding = " Extension/1.0 (like; Plugin)";
+                for (int i = 0; length < target; i++) {
+                    line[length++] = (byte) padding.charAt(i % padding.length());
+                }
+            }
+            if (length - agentStart == 0) {
+                line[length++] = '-';
+            }
+            line[length++] = '"';
+        }
+
+        private int responseCode() {
+            if (burstLeft > 0 && random.nextInt(10) < 6) {
+                return SERVER_ERROR_CODES[random.nextInt(SERVER_ERROR_CODES.length)];
+            }
+            int roll = random.nextInt(100);
+            if (roll < 85) {
+                return SUCCESS_CODES[random.nextInt(SUCCESS_CODES.length)];
+            }
+            if (roll < 98) {
+                return CLIENT_ERROR_CODES[random.nextInt(CLIENT_ERROR_CODES.length)];
+            }
+            return SERVER_ERROR_CODES[random.nextInt(SERVER_ERROR_CODES.length)];
+        }
+
+        // испорченные строки разных видов, которые разборщик должен отвергнуть
+        private void malformed() {
+            switch (random.nextInt(5)) {
+                case 0: // обрезанная строка
+                    wellFormed();
+                    length = 1 + random.nextInt(length - 1);
+                    break;
+                case 1: // размер "-"
+                    appendIp(ips.sample(random));
+                    append(" - - [");
+                    appendTime();
+                    append("] \"GET / HTTP/1.1\" 200 - \"-\" \"-\"");
+                    break;
+                case 2: // неверная дата
+                    appendIp(ips.sample(random));
+                    append(" - - [32/Foo/2024:25:61:61 +0300] \"GET / HTTP/1.1\" 200 10 \"-\" \"-\"");
+                    break;
+                case 3: // мусор
+                    for (int i = 20 + random.nextInt(100); i > 0; i--) {
+                        line[length++] = (byte) ('!' + random.nextInt(94));
+                    }
+                    break;
+                default: // пустая строка
+                    break;
+            }
+            // перевод строки внутри мусора сдвинул бы границы строк
+            for (int i = 0; i < length; i++) {
+                if (line[i] == '\n' || line[i] == '\r') {
+                    line[i] = ' ';
+                }
+            }
+        }
+
+        String userAgent() {
+            boolean bot = random.nextDouble() < botRatio;
+            return new String(agentBytes(bot, agents.sample(random)), StandardCharsets.US_ASCII);
+        }
+
+        // User-Agent по рангу; форматируется один раз, дальше берётся из кэша
+        private byte[] agentBytes(boolean bot, int rank) {
+            byte[][] cache = bot ? botAgents : browserAgents;
+            if (cache[rank] == null) {
+                String agent = bot
+                        ? String.format(BOTS[rank % BOTS.length], rank / BOTS.length % 10)
+                        : String.format(BROWSERS[rank % BROWSERS.length], 100 + rank / BROWSERS.length % 30);
+                cache[rank] = agent.getBytes(StandardCharsets.US_ASCII);
+            }
+            return cache[rank];
+        }
+
+        // IP по рангу: перемешанный номер, каждый десятый адрес - IPv6
+        private void appendIp(int rank) {
+            long mixed = HyperLogLog.mix64(seed ^ rank * 0x9E3779B97F4A7C15L);
+            if (rank % 10 == 9) {
+                append("2001:db8:");
+                appendHex((int) (mixed >>> 48) & 0xFFFF);
+                append("::");
+                appendHex((int) mixed & 0xFFFF);
+                return;
+            }
+            appendNumber(1 + (int) ((mixed >>> 24) & 0xFF) % 223);
+            line[length++] = '.';
+            appendNumber((int) (mixed >>> 16) & 0xFF);
+            line[length++] = '.';
+            appendNumber((int) (mixed >>> 8) & 0xFF);
+            line[length++] = '.';
+            appendNumber((int) mixed & 0xFF);
+        }
+
+        private void appendPath(int rank, boolean missing) {
+            int template = rank % PATH_TEMPLATES.length;
+            append(missing ? "/old" : "");
+            append(PATH_TEMPLATES[template]);
+            appendNumber(rank);
+            append(PATH_SUFFIXES[template]);
+        }
+
+        private void appendReferer(int rank) {
+            append(rank % 3 == 0 ? "http://" : "https://");
+            if (rank < REFERER_DOMAINS.length) {
+                append(REFERER_DOMAINS[rank]);
+            } else {
+                append("site");
+                appendNumber(rank);
+                append(".example.com");
+            }
+            append("/page/");
+            appendNumber(rank % 100);
+        }
+
+        // время записи: пересчитывается только при смене секунды
+        private void appendTime() {
+            long second = startEpochSecond + (long) time;
+            if (second != cachedSecond) {
+                LocalDateTime dateTime = LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.ofTotalSeconds(zoneOffsetSeconds));
+                int offset = Math.abs(zoneOffsetSeconds) / 60;
+                String text = String.format("%02d/%s/%04d:%02d:%02d:%02d %s%02d%02d", dateTime.getDayOfMonth(),
+                        MONTHS[dateTime.getMonthValue() - 1], dateTime.getYear(), dateTime.getHour(), dateTime.getMinute(),
+                        dateTime.getSecond(), zoneOffsetSeconds < 0 ? "-" : "+", offset / 60, offset % 60);
+                for (int i = 0; i < cachedTime.length; i++) {
+                    cachedTime[i] = (byte) text.charAt(i);
+                }
+                cachedSecond = second;
+            }
+            System.arraycopy(cachedTime, 0, line, length, cachedTime.length);
+            length += cachedTime.length;
+        }
+
+        private void append(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                line[length++] = (byte) text.charAt(i);
+            }
+        }
+
+        private void appendNumber(int value) {
+            if (value >= 10) {
+                appendNumber(value / 10);
+            }
+            line[length++] = (byte) ('0' + value % 10);
+        }
+
+        private void appendHex(int value) {
+            if (value >= 16) {
+                appendHex(value >>> 4);
+            }
+            line[length++] = (byte) Character.forDigit(value & 15, 16);
+        }
+    }
+
+    /**
+     * Выборка рангов 1..n по закону Ципфа; возвращает ранг, уменьшенный на 1.
+     * До ALIAS_LIMIT значений - таблица псевдонимов Уолкера (O(1) на выборку, 12 байт на значение),
+     * для больших n - метод rejection-inversion (W. Hörmann, G. Derflinger), память которого не зависит от n.
+     */
+    static final class ZipfSampler {
+        private static final int ALIAS_LIMIT = 1 << 20;
+
+        private final int n;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double s;
+        private final double[] probability;
+        private final int[] alias;
+
+        ZipfSampler(int n, double exponent) {
+            this.n = n;
+            this.exponent = exponent;
+            this.hIntegralX1 = hIntegral(1.5) - 1;
+            this.hIntegralN = hIntegral(n + 0.5);
+            this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+            if (n <= ALIAS_LIMIT) {
+                probability = new double[n];
+                alias = new int[n];
+                buildAliasTable();
+            } else {
+                probability = null;
+                alias = null;
+            }
+        }
+
+        // метод Воза: значения с весом меньше среднего дополняются значениями с весом больше среднего
+        private void buildAliasTable() {
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                probability[k] = h(k + 1);
+                sum += probability[k];
+            }
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int smallCount = 0;
+            int largeCount = 0;
+            for (int k = 0; k < n; k++) {
+                probability[k] = probability[k] * n / sum;
+                if (probability[k] < 1) {
+                    small[smallCount++] = k;
+                } else {
+                    large[largeCount++] = k;
+                }
+            }
+            while (smallCount > 0 && largeCount > 0) {
+                int less = small[--smallCount];
+                int more = large[largeCount - 1];
+                alias[less] = more;
+                probability[more] -= 1 - probability[less];
+                if (probability[more] < 1) {
+                    largeCount--;
+                    small[smallCount++] = more;
+                }
+            }
+            // остатки из-за ошибок округления
+            while (largeCount > 0) {
+                probability[large[--largeCount]] = 1;
+            }
+            while (smallCount > 0) {
+                probability[small[--smallCount]] = 1;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            if (alias != null) {
+                int k = random.nextInt(n);
+                return random.nextDouble() < probability[k] ? k : alias[k];
+            }
+            while (true) {
+                double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) (x + 0.5);
+                if (k < 1) {
+                    k = 1;
+                } else if (k > n) {
+                    k = n;
+                }
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k - 1;
+                }
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = x * (1 - exponent);
+            if (t < -1) {
+                t = -1;
+            }
+            return Math.exp(helper1(t) * x);
+        }
+
+        // log(1 + x) / x с точностью и около нуля
+        private static double helper1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        // (exp(x) - 1) / x с точностью и около нуля
+        private static double helper2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+    }
+
+    /**
+     * Запуск: LogGenerator <файл[.gz]> [--size 1G] [--seed N] [--start 2024-12-01T00:00:00] [--days N]
+     * [--ips N] [--paths N] [--agents N] [--referers N] [--zipf S] [--bots доля] [--malformed доля] [--long доля]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Использование: LogGenerator <файл[.gz]> [--size 1G] [--seed N] [--start 2024-12-01T00:00:00]"
+                    + " [--days N] [--ips N] [--paths N] [--agents N] [--referers N] [--zipf S] [--bots доля]"
+                    + " [--malformed доля] [--long доля]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[0]);
+        long seed = 1;
+        long size = 100L * 1024 * 1024;
+        LocalDateTime start = LocalDateTime.of(2024, 12, 1, 0, 0);
+        double days = 3;
+        int ips = 100_000;
+        int paths = 10_000;
+        int agents = 500;
+        int referers = 200;
+        LogGenerator defaults = new LogGenerator(0);
+        double zipf = defaults.zipfExponent;
+        double bots = defaults.botRatio;
+        double malformed = defaults.malformedRatio;
+        double longAgents = defaults.longUserAgentRatio;
+        for (int i = 1; i < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--size": size = parseSize(value); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                case "--start": start = LocalDateTime.parse(value); break;
+                case "--days": days = Double.parseDouble(value); break;
+                case "--ips": ips = Integer.parseInt(value); break;
+                case "--paths": paths = Integer.parseInt(value); break;
+                case "--agents": agents = Integer.parseInt(value); break;
+                case "--referers": referers = Integer.parseInt(value); break;
+                case "--zipf": zipf = Double.parseDouble(value); break;
+                case "--bots": bots = Double.parseDouble(value); break;
+                case "--malformed": malformed = Double.parseDouble(value); break;
+                case "--long": longAgents = Double.parseDouble(value); break;
+                default: throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+            }
+        }
+        LogGenerator generator = new LogGenerator(seed)
+                .withSize(size)
+                .withTimeSpan(start, 3 * 3600, Math.max(1, (long) (days * 86400)))
+                .withCardinalities(ips, paths, agents, referers)
+                .withZipfExponent(zipf)
+                .withBotRatio(bots)
+                .withMalformedRatio(malformed)
+                .withLongUserAgentRatio(longAgents);
+        long begin = System.nanoTime();
+        long lines = generator.writeTo(file);
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        System.out.println(String.format("Записано %d строк, %.1f МБ за %.1f с (%.1f МБ/с)", lines,
+                size / 1048576.0, seconds, size / 1048576.0 / seconds));
+    }
+
+    // размер с необязательным суффиксом K, M или G
+    private static long parseSize(String value) {
+        char unit = Character.toUpperCase(value.charAt(value.length() - 1));
+        long multiplier = unit == 'K' ? 1L << 10 : unit == 'M' ? 1L << 20 : unit == 'G' ? 1L << 30 : 1;
+        String digits = multiplier == 1 ? value : value.substring(0, value.length() - 1);
+        return (long) (Double.parseDouble(digits) * multiplier);
+    }
+}
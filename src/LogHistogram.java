@@ -0,0 +1,186 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Гистограмма неотрицательных значений с логарифмическими корзинами (по образцу HdrHistogram).
+ * Значения меньше 2 * SUB_BUCKETS считаются точно, выше каждая степень двойки делится на SUB_BUCKETS
+ * равных корзин, поэтому относительная погрешность процентилей не больше 1 / SUB_BUCKETS (меньше 1%).
+ * Запись - O(1): номер корзины вычисляется по старшему биту значения. Массив счётчиков растёт
+ * до корзины наибольшего записанного значения, но для любых long не больше MAX_INDEX + 1 счётчиков (57 КБ).
+ * Гистограммы частичных результатов объединяются через merge.
+ */
+public class LogHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_INDEX = index(Long.MAX_VALUE);
+
+    private long[] counts = new long[0];
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * Записывает count одинаковых значений
+     */
+    public void record(long value, long count) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Отрицательное значение в гистограмме: " + value);
+        }
+        if (count <= 0) {
+            return;
+        }
+        int index = index(value);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.min(MAX_INDEX + 1, Math.max(index + 1, counts.length * 2)));
+        }
+        counts[index] += count;
+        totalCount += count;
+        sum += value * count;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    // номер корзины: до 2 * SUB_BUCKETS - само значение, дальше - по старшему биту и следующим SUB_BUCKET_BITS битам
+    static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // наименьшее значение корзины
+    static long lowestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    // наибольшее значение корзины
+    static long highestValue(int index) {
+        return index >= MAX_INDEX ? Long.MAX_VALUE : lowestValue(index + 1) - 1;
+    }
+
+    public void merge(LogHistogram other) {
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Значение, не меньше которого percentile процентов записанных значений (верхняя граница корзины,
+     * но не больше максимума); 0 для пустой гистограммы
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Процентиль должен быть от 0 до 100: " + percentile);
+        }
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.max(min, Math.min(max, highestValue(i)));
+            }
+        }
+        return max;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Сумма записанных значений (для размеров ответов - трафик)
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMin() {
+        return totalCount > 0 ? min : 0;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount > 0 ? (double) sum / totalCount : 0;
+    }
+
+    /**
+     * Записывает ненулевые корзины для контрольной точки (см. Checkpoint)
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        int nonEmpty = 0;
+        for (long count : counts) {
+            if (count != 0) {
+                nonEmpty++;
+            }
+        }
+        out.writeInt(nonEmpty);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                out.writeInt(i);
+                out.writeLong(counts[i]);
+            }
+        }
+        out.writeLong(sum);
+        out.writeLong(min);
+        out.writeLong(max);
+    }
+
+    public static LogHistogram readFrom(DataInput in) throws IOException {
+        LogHistogram histogram = new LogHistogram();
+        for (int i = in.readInt(); i > 0; i--) {
+            int index = in.readInt();
+            long count = in.readLong();
+            if (index < 0 || index > MAX_INDEX || count <= 0) {
+                throw new IOException("Некорректная корзина гистограммы: " + index);
+            }
+            if (index >= histogram.counts.length) {
+                histogram.counts = Arrays.copyOf(histogram.counts, index + 1);
+            }
+            histogram.counts[index] += count;
+            histogram.totalCount += count;
+        }
+        histogram.sum = in.readLong();
+        histogram.min = in.readLong();
+        histogram.max = in.readLong();
+        return histogram;
+    }
+
+    /**
+     * Количество, среднее, p50, p90, p99, p99.9 и максимум в одну строку
+     */
+    @Override
+    public String toString() {
+        return String.format("количество %d, среднее %.1f, p50 %d, p90 %d, p99 %d, p99.9 %d, максимум %d",
+                totalCount, getMean(), getValueAtPercentile(50), getValueAtPercentile(90),
+                getValueAtPercentile(99), getValueAtPercentile(99.9), getMax());
+    }
+}
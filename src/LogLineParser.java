@@ -0,0 +1,346 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Однопроходный разбор строки лога прямо по байтам.
+ * Формат: IP - - [дата] "метод путь протокол" код размер "referer" "user-agent"
+ * Разборщик один раз проходит строку, запоминает границы полей и декодирует числа на месте,
+ * не создавая промежуточных строк. Экземпляр переиспользуется между строками и не потокобезопасен.
+ * Разборщик, созданный с набором полей, останавливается после последнего поля набора
+ * и декодирует адрес и время, только если они в наборе; строка проверяется на соответствие формату
+ * только до этого места, а значения полей вне набора не определены.
+ */
+public class LogLineParser {
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+
+    private final TimestampDecoder timestampDecoder = new TimestampDecoder();
+    private final boolean decodeIp;
+    private final boolean decodeTime;
+    private final LogField last; // после этого поля разбор заканчивается
+
+    private ByteBuffer buffer;
+    private final long[] ip = new long[2]; // адрес в двоичном виде, см. IpAddress
+    private int ipStart;
+    private int ipEnd;
+    private int timeStart;
+    private int timeEnd;
+    private int methodStart;
+    private int methodEnd;
+    private int pathStart;
+    private int pathEnd;
+    private int responseCode;
+    private int dataSize;
+    private int refererStart;
+    private int refererEnd;
+    private int userAgentStart;
+    private int userAgentEnd;
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Разборщик всех полей строки
+     */
+    public LogLineParser() {
+        this(EnumSet.allOf(LogField.class));
+    }
+
+    /**
+     * Разборщик только полей fields, например STATUS и SIZE для подсчёта ошибок и трафика
+     */
+    public LogLineParser(Set<LogField> fields) {
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("Не указаны поля для разбора");
+        }
+        this.decodeIp = fields.contains(LogField.IP);
+        this.decodeTime = fields.contains(LogField.TIME);
+        LogField max = LogField.IP;
+        for (LogField field : fields) {
+            if (field.compareTo(max) > 0) {
+                max = field;
+            }
+        }
+        this.last = max;
+    }
+
+    /**
+     * Разбирает строку из buffer в диапазоне [from, to).
+     * Возвращает false, если строка не соответствует формату.
+     */
+    public boolean parse(ByteBuffer buffer, int from, int to) {
+        return parseLine(buffer, from, to) == ParseResult.OK;
+    }
+
+    /**
+     * Разбирает строку из buffer в диапазоне [from, to); возвращает OK или причину отказа.
+     * Исключения при разборе не создаются, так что поток испорченных строк обходится дёшево.
+     */
+    public ParseResult parseLine(ByteBuffer buffer, int from, int to) {
+        this.buffer = buffer;
+        if (from == to) {
+            return ParseResult.EMPTY;
+        }
+        int p = from;
+
+        // IP адрес - до первого пробела
+        while (p < to && buffer.get(p) != ' ') {
+            p++;
+        }
+        if (p == from || p == to) {
+            return ParseResult.BAD_ADDRESS;
+        }
+        ipStart = from;
+        ipEnd = p;
+        if (decodeIp) {
+            IpAddress.parse(buffer, from, p, ip);
+        }
+        if (last == LogField.IP) {
+            return ParseResult.OK;
+        }
+
+        // дата в квадратных скобках
+        p = indexOf(buffer, (byte) '[', p, to);
+        if (p < 0) {
+            return ParseResult.BAD_TIMESTAMP;
+        }
+        timeStart = p + 1;
+        p = indexOf(buffer, (byte) ']', timeStart, to);
+        if (p < 0 || decodeTime && !timestampDecoder.decode(buffer, timeStart, p)) {
+            return ParseResult.BAD_TIMESTAMP;
+        }
+        timeEnd = p;
+        if (last == LogField.TIME) {
+            return ParseResult.OK;
+        }
+
+        // запрос в кавычках: метод, путь, протокол
+        p = indexOf(buffer, (byte) '"', p + 1, to);
+        if (p < 0) {
+            return ParseResult.MISSING_QUOTE;
+        }
+        methodStart = ++p;
+        while (p < to && buffer.get(p) != ' ' && buffer.get(p) != '"') {
+            p++;
+        }
+        methodEnd = p;
+        if (p == to || buffer.get(p) != ' ' || methodEnd == methodStart) {
+            return ParseResult.BAD_REQUEST; // запрос вида "-" или без пути
+        }
+        pathStart = ++p;
+        while (p < to && buffer.get(p) != ' ' && buffer.get(p) != '"') {
+            p++;
+        }
+        pathEnd = p;
+        if (last == LogField.METHOD || last == LogField.PATH) {
+            return ParseResult.OK;
+        }
+        p = indexOf(buffer, (byte) '"', p, to);
+        if (p < 0) {
+            return ParseResult.MISSING_QUOTE;
+        }
+
+        // код ответа и размер данных
+        p = skipSpace(buffer, p + 1, to);
+        int end = digitsEnd(buffer, p, to);
+        if (end < 0) {
+            return ParseResult.BAD_STATUS;
+        }
+        responseCode = parseInt(buffer, p, end);
+        if (responseCode < 0) {
+            return ParseResult.BAD_STATUS;
+        }
+        if (last == LogField.STATUS) {
+            return ParseResult.OK;
+        }
+        p = skipSpace(buffer, end, to);
+        end = digitsEnd(buffer, p, to);
+        if (end < 0) {
+            return ParseResult.BAD_SIZE;
+        }
+        dataSize = parseInt(buffer, p, end);
+        if (dataSize < 0) {
+            return ParseResult.BAD_SIZE;
+        }
+        if (last == LogField.SIZE) {
+            return ParseResult.OK;
+        }
+
+        // referer в кавычках
+        p = skipSpace(buffer, end, to);
+        if (p == to || buffer.get(p) != '"') {
+            return ParseResult.MISSING_QUOTE;
+        }
+        refererStart = p + 1;
+        p = indexOf(buffer, (byte) '"', refererStart, to);
+        if (p < 0) {
+            return ParseResult.MISSING_QUOTE;
+        }
+        refererEnd = p;
+        if (last == LogField.REFERER) {
+            return ParseResult.OK;
+        }
+
+        // user-agent - всё до последней кавычки строки
+        p = indexOf(buffer, (byte) '"', p + 1, to);
+        if (p < 0) {
+            userAgentStart = userAgentEnd = to;
+            return ParseResult.OK;
+        }
+        userAgentStart = p + 1;
+        int q = to - 1;
+        while (q >= userAgentStart && buffer.get(q) != '"') {
+            q--;
+        }
+        userAgentEnd = q >= userAgentStart ? q : to;
+        return ParseResult.OK;
+    }
+
+    /**
+     * Старшие 64 бита адреса клиента (для IPv4 - 0)
+     */
+    public long getIpHigh() {
+        return ip[0];
+    }
+
+    /**
+     * Младшие 64 бита адреса клиента (для IPv4 - ::ffff:a.b.c.d)
+     */
+    public long getIpLow() {
+        return ip[1];
+    }
+
+    public String getIpAddress() {
+        return IpAddress.format(ip[0], ip[1]);
+    }
+
+    /**
+     * Время запроса в секундах от 1970-01-01T00:00:00Z
+     */
+    public long getEpochSecond() {
+        return timestampDecoder.getEpochSecond();
+    }
+
+    /**
+     * Смещение часового пояса из строки лога в секундах
+     */
+    public int getOffsetSeconds() {
+        return timestampDecoder.getOffsetSeconds();
+    }
+
+    public HttpMethod getMethod() {
+        int length = methodEnd - methodStart;
+        for (HttpMethod method : METHODS) {
+            String name = method.name();
+            if (name.length() != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && (buffer.get(methodStart + i) & 0xDF) == name.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return method;
+            }
+        }
+        return HttpMethod.GET; // значение по умолчанию
+    }
+
+    public String getPath() {
+        return decode(pathStart, pathEnd);
+    }
+
+    /**
+     * Номер пути в словаре или StringDictionary.NO_ID, если словарь заполнен
+     */
+    public int getPathId(StringDictionary dictionary) {
+        return dictionary.idOf(buffer, pathStart, pathEnd);
+    }
+
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    public int getDataSize() {
+        return dataSize;
+    }
+
+    /**
+     * Возвращает referer или null, если он не указан ("-")
+     */
+    public String getReferer() {
+        if (refererEnd - refererStart == 1 && buffer.get(refererStart) == '-') {
+            return null;
+        }
+        return decode(refererStart, refererEnd);
+    }
+
+    /**
+     * Номер referer в словаре; StringDictionary.NO_ID, если referer не указан или словарь заполнен
+     */
+    public int getRefererId(StringDictionary dictionary) {
+        if (refererEnd - refererStart == 1 && buffer.get(refererStart) == '-') {
+            return StringDictionary.NO_ID;
+        }
+        return dictionary.idOf(buffer, refererStart, refererEnd);
+    }
+
+    public String getUserAgent() {
+        return decode(userAgentStart, userAgentEnd);
+    }
+
+    public int getUserAgentId(StringDictionary dictionary) {
+        return dictionary.idOf(buffer, userAgentStart, userAgentEnd);
+    }
+
+    private String decode(int start, int end) {
+        int length = end - start;
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(start, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    static int indexOf(ByteBuffer buffer, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipSpace(ByteBuffer buffer, int p, int to) {
+        while (p < to && buffer.get(p) == ' ') {
+            p++;
+        }
+        return p;
+    }
+
+    // конец последовательности цифр или -1, если цифр нет
+    private static int digitsEnd(ByteBuffer buffer, int p, int to) {
+        int start = p;
+        while (p < to && buffer.get(p) >= '0' && buffer.get(p) <= '9') {
+            p++;
+        }
+        if (p == start || (p < to && buffer.get(p) != ' ')) {
+            return -1;
+        }
+        return p;
+    }
+
+    // число без знака; -1 при переполнении int
+    private static int parseInt(ByteBuffer buffer, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (buffer.get(i) - '0');
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) value;
+    }
+}
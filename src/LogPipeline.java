@@ -0,0 +1,467 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Конвейерный анализ: чтение, разбор и агрегация выполняются отдельными этапами, соединёнными очередями.
+ * Чтение (один поток) заполняет блоки байтов и обрезает их по последнему переводу строки, разбор
+ * (parsers потоков) превращает блок в пачку LogEntry, агрегация (aggregators потоков) добавляет пачки
+ * в ConcurrentStatistics, где у каждого потока агрегации своя полоса.
+ * Блоки и пачки создаются заранее и после обработки возвращаются в пулы, так что передача между этапами
+ * ничего не выделяет. Очереди ограничены (ArrayBlockingQueue): если следующий этап не успевает,
+ * предыдущий ждёт. По каждому этапу ведётся Stage (объём, занятость, ожидание входа и выхода,
+ * глубина входной очереди); этап с наибольшей занятостью - узкое место.
+ * Файл читается потоком (в том числе .gz), без отображения в память. Пачки агрегируются не в порядке файла,
+ * поэтому самые частые значения могут отличаться от ParallelLogAnalyzer в пределах погрешности SpaceSaving.
+ */
+public class LogPipeline {
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int BATCH_SIZE = 4096; // начальная ёмкость пачки, растёт до размера самого большого блока
+    private static final int QUEUE_CAPACITY = 8; // блоков или пачек в очереди между этапами
+    private static final Block END = new Block(0);
+    private static final Batch END_BATCH = new Batch(0);
+
+    private final int parsers;
+    private final int aggregators;
+    private final StatisticsConfig config;
+    private final LongLinePolicy longLines = LongLinePolicy.fromSystemProperties();
+    private volatile List<Stage> stages = List.of();
+
+    public LogPipeline(int parsers, int aggregators, StatisticsConfig config) {
+        if (parsers < 1 || aggregators < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть положительным: " + parsers + ", "
+                    + aggregators);
+        }
+        this.parsers = parsers;
+        this.aggregators = aggregators;
+        this.config = config;
+    }
+
+    public AnalysisResult analyze(Path path) throws IOException {
+        BlockingQueue<Block> freeBlocks = new ArrayBlockingQueue<>(QUEUE_CAPACITY + parsers + 2);
+        while (freeBlocks.remainingCapacity() > 0) {
+            freeBlocks.add(new Block(BLOCK_SIZE));
+        }
+        BlockingQueue<Batch> freeBatches = new ArrayBlockingQueue<>(QUEUE_CAPACITY + parsers + aggregators);
+        while (freeBatches.remainingCapacity() > 0) {
+            freeBatches.add(new Batch(BATCH_SIZE));
+        }
+        BlockingQueue<Block> blocks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        Stage reading = new Stage("Чтение", 1, "байт", null, 0);
+        Stage parsing = new Stage("Разбор", parsers, "строк", blocks, QUEUE_CAPACITY);
+        Stage aggregation = new Stage("Агрегация", aggregators, "записей", batches, QUEUE_CAPACITY);
+        stages = List.of(reading, parsing, aggregation);
+
+        ConcurrentStatistics statistics = new ConcurrentStatistics(config, aggregators);
+        ParseFailures[] failures = new ParseFailures[parsers];
+        AtomicInteger parsersLeft = new AtomicInteger(parsers);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(1 + parsers + aggregators);
+        try {
+            run(executor, failure, () -> read(path, reading, freeBlocks, blocks));
+            for (int i = 0; i < parsers; i++) {
+                ParseFailures parserFailures = failures[i] = new ParseFailures();
+                run(executor, failure, () -> {
+                    parse(path, parsing, blocks, freeBlocks, freeBatches, batches, parserFailures);
+                    if (parsersLeft.decrementAndGet() == 0) {
+                        for (int j = 0; j < aggregators; j++) {
+                            batches.put(END_BATCH);
+                        }
+                    }
+                });
+            }
+            for (int i = 0; i < aggregators; i++) {
+                run(executor, failure, () -> aggregate(aggregation, batches, freeBatches, statistics));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Анализ прерван", e);
+        } finally {
+            executor.shutdownNow();
+            reading.finish();
+            parsing.finish();
+            aggregation.finish();
+        }
+        Throwable cause = failure.get();
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause != null) {
+            throw new IOException("Ошибка конвейера", cause);
+        }
+        ParseFailures total = new ParseFailures();
+        for (ParseFailures parserFailures : failures) {
+            total.merge(parserFailures);
+        }
+        return new AnalysisResult(statistics.snapshot(), parsing.getItems(), total);
+    }
+
+    /**
+     * Этапы текущего или последнего запуска: чтение, разбор, агрегация. Счётчики можно читать во время анализа
+     */
+    public List<Stage> getStages() {
+        return stages;
+    }
+
+    /**
+     * Этап с наибольшей долей занятого времени на поток, или null до запуска
+     */
+    public Stage getBottleneck() {
+        Stage result = null;
+        for (Stage stage : stages) {
+            if (result == null || stage.getUtilization() > result.getUtilization()) {
+                result = stage;
+            }
+        }
+        return result;
+    }
+
+    private interface StageTask {
+        void run() throws IOException, InterruptedException;
+    }
+
+    // ошибка любого этапа запоминается и прерывает остальные, иначе они ждали бы друг друга бесконечно
+    private static void run(ExecutorService executor, AtomicReference<Throwable> failure, StageTask task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    if (failure.compareAndSet(null, e)) {
+                        executor.shutdownNow();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // уже запущенный этап завершился ошибкой и остановил пул
+        }
+    }
+
+    private static InputStream open(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        if (!GzipLogReader.isGzip(path)) {
+            return in;
+        }
+        try {
+            return new GZIPInputStream(in, 64 * 1024);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    // чтение: блок заканчивается последним переводом строки, остаток переносится в начало следующего блока
+    private void read(Path path, Stage stage, BlockingQueue<Block> free, BlockingQueue<Block> blocks)
+            throws IOException, InterruptedException {
+        try (InputStream in = open(path)) {
+            Block block = stage.acquire(free);
+            long position = 0;
+            int carried = 0;
+            while (true) {
+                long start = System.nanoTime();
+                int length = carried + in.readNBytes(block.data, carried, BLOCK_SIZE - carried);
+                stage.work(start, length - carried);
+                if (length == 0) {
+                    free.put(block);
+                    break;
+                }
+                int end = length;
+                if (length == BLOCK_SIZE) { // иначе файл закончился и последняя строка может быть без перевода строки
+                    end = 0;
+                    for (int i = length - 1; i >= 0; i--) {
+                        if (block.data[i] == '\n') {
+                            end = i + 1;
+                            break;
+                        }
+                    }
+                }
+                Block next = stage.acquire(free);
+                block.position = position;
+                block.longLineChars = 0;
+                if (end == 0) {
+                    // в блоке ни одного перевода строки: строка длиннее блока, остаток пропускается
+                    start = System.nanoTime();
+                    long lineLength = length;
+                    carried = 0;
+                    int read;
+                    while ((read = in.readNBytes(next.data, 0, BLOCK_SIZE)) > 0) {
+                        stage.items.add(read);
+                        int newline = indexOf(next.data, read, (byte) '\n');
+                        if (newline >= 0) {
+                            lineLength += newline;
+                            carried = read - newline - 1;
+                            System.arraycopy(next.data, newline + 1, next.data, 0, carried);
+                            break;
+                        }
+                        lineLength += read;
+                    }
+                    stage.busyNanos.add(System.nanoTime() - start);
+                    block.length = length;
+                    block.longLineChars = lineLength;
+                    position += lineLength + 1;
+                } else {
+                    carried = length - end;
+                    System.arraycopy(block.data, end, next.data, 0, carried);
+                    block.length = end;
+                    position += end;
+                }
+                stage.put(blocks, block);
+                block = next;
+            }
+        }
+        for (int i = 0; i < parsers; i++) {
+            blocks.put(END);
+        }
+    }
+
+    private static int indexOf(byte[] data, int length, byte value) {
+        for (int i = 0; i < length; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // разбор: блок строк превращается в пачку записей, блок возвращается в пул
+    private void parse(Path path, Stage stage, BlockingQueue<Block> blocks, BlockingQueue<Block> freeBlocks,
+                       BlockingQueue<Batch> freeBatches, BlockingQueue<Batch> batches, ParseFailures failures)
+            throws InterruptedException {
+        LogLineParser parser = new LogLineParser();
+        while (true) {
+            Block block = stage.take(blocks);
+            if (block == END) {
+                return;
+            }
+            Batch batch = stage.acquire(freeBatches);
+            long start = System.nanoTime();
+            String source = block.position > 0 ? path + " с позиции " + block.position : path.toString();
+            ParsingLineHandler handler = new ParsingLineHandler(parser, batch, failures, Quarantine.shared(),
+                    longLines, source, 0);
+            long lines = 0;
+            if (block.longLineChars > 0) {
+                handler.onLongLine(block.buffer, 0, block.length, ++lines, block.longLineChars);
+            } else {
+                int lineStart = 0;
+                for (int i = 0; i < block.length; i++) {
+                    if (block.data[i] == '\n') {
+                        MappedLogReader.handleLine(block.buffer, lineStart, i, ++lines, handler);
+                        lineStart = i + 1;
+                    }
+                }
+                if (lineStart < block.length) {
+                    MappedLogReader.handleLine(block.buffer, lineStart, block.length, ++lines, handler);
+                }
+            }
+            stage.work(start, lines);
+            freeBlocks.put(block);
+            stage.put(batches, batch);
+        }
+    }
+
+    private static void aggregate(Stage stage, BlockingQueue<Batch> batches, BlockingQueue<Batch> free,
+                                  ConcurrentStatistics statistics) throws InterruptedException {
+        while (true) {
+            Batch batch = stage.take(batches);
+            if (batch == END_BATCH) {
+                return;
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < batch.count; i++) {
+                statistics.addEntry(batch.entries[i]);
+            }
+            stage.work(start, batch.count);
+            batch.clear();
+            free.put(batch);
+        }
+    }
+
+    /**
+     * Счётчики одного этапа конвейера. Время ожидания входа - этап простаивает из-за предыдущего,
+     * ожидание выхода - его сдерживает следующий (очередь или пул заполнены)
+     */
+    public static final class Stage {
+        private final String name;
+        private final int threads;
+        private final String unit;
+        private final BlockingQueue<?> input;
+        private final int inputCapacity;
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+        private final LongAdder items = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder inputWaitNanos = new LongAdder();
+        private final LongAdder outputWaitNanos = new LongAdder();
+        private final LongAdder depthSum = new LongAdder();
+        private final LongAdder depthSamples = new LongAdder();
+        private final AtomicInteger maxDepth = new AtomicInteger();
+
+        Stage(String name, int threads, String unit, BlockingQueue<?> input, int inputCapacity) {
+            this.name = name;
+            this.threads = threads;
+            this.unit = unit;
+            this.input = input;
+            this.inputCapacity = inputCapacity;
+        }
+
+        <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+            int depth = queue.size();
+            depthSum.add(depth);
+            depthSamples.increment();
+            int max;
+            while (depth > (max = maxDepth.get()) && !maxDepth.compareAndSet(max, depth)) {
+            }
+            long start = System.nanoTime();
+            T item = queue.take();
+            inputWaitNanos.add(System.nanoTime() - start);
+            return item;
+        }
+
+        // свободный блок или пачка из пула; пул пуст, пока следующие этапы их не вернули
+        <T> T acquire(BlockingQueue<T> pool) throws InterruptedException {
+            long start = System.nanoTime();
+            T item = pool.take();
+            outputWaitNanos.add(System.nanoTime() - start);
+            return item;
+        }
+
+        <T> void put(BlockingQueue<T> queue, T item) throws InterruptedException {
+            long start = System.nanoTime();
+            queue.put(item);
+            outputWaitNanos.add(System.nanoTime() - start);
+        }
+
+        void work(long start, long count) {
+            busyNanos.add(System.nanoTime() - start);
+            items.add(count);
+        }
+
+        void finish() {
+            endNanos = System.nanoTime();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Обработано: байт для чтения, строк для разбора, записей для агрегации
+         */
+        public long getItems() {
+            return items.sum();
+        }
+
+        public long getBusyNanos() {
+            return busyNanos.sum();
+        }
+
+        public long getInputWaitNanos() {
+            return inputWaitNanos.sum();
+        }
+
+        public long getOutputWaitNanos() {
+            return outputWaitNanos.sum();
+        }
+
+        /**
+         * Доля времени, которую потоки этапа были заняты работой, от 0 до 1
+         */
+        public double getUtilization() {
+            long elapsed = (endNanos != 0 ? endNanos : System.nanoTime()) - startNanos;
+            return elapsed > 0 ? (double) getBusyNanos() / threads / elapsed : 0;
+        }
+
+        /**
+         * Текущая глубина входной очереди, 0 у чтения
+         */
+        public int getQueueDepth() {
+            return input != null ? input.size() : 0;
+        }
+
+        public double getAverageQueueDepth() {
+            long samples = depthSamples.sum();
+            return samples > 0 ? (double) depthSum.sum() / samples : 0;
+        }
+
+        public int getMaxQueueDepth() {
+            return maxDepth.get();
+        }
+
+        @Override
+        public String toString() {
+            long busy = getBusyNanos();
+            String result = String.format("%s (потоков: %d): %d %s, занят %.0f%% (%.2f с, %.0f %s/с на поток),"
+                            + " ждал вход %.2f с, ждал выход %.2f с", name, threads, getItems(), unit,
+                    getUtilization() * 100, busy / 1e9, busy > 0 ? getItems() * 1e9 / busy : 0,
+                    unit, getInputWaitNanos() / 1e9, getOutputWaitNanos() / 1e9);
+            if (input != null) {
+                result += String.format(", очередь: сейчас %d, в среднем %.1f, максимум %d из %d",
+                        getQueueDepth(), getAverageQueueDepth(), getMaxQueueDepth(), inputCapacity);
+            }
+            return result;
+        }
+    }
+
+    private static final class Block {
+        private final byte[] data;
+        private final ByteBuffer buffer;
+        private int length;
+        private long position; // смещение блока от начала (распакованного) файла
+        private long longLineChars; // больше 0 - в блоке только начало одной слишком длинной строки этой длины
+
+        Block(int size) {
+            this.data = new byte[size];
+            this.buffer = ByteBuffer.wrap(data);
+        }
+    }
+
+    // разобранные записи одного блока; массив растёт до самого большого блока и дальше переиспользуется
+    private static final class Batch implements ParsingLineHandler.Sink {
+        private LogEntry[] entries;
+        private int count;
+
+        Batch(int capacity) {
+            this.entries = new LogEntry[capacity];
+        }
+
+        @Override
+        public void accept(LogLineParser parser) {
+            if (count == entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[count++] = new LogEntry(parser);
+        }
+
+        void clear() {
+            Arrays.fill(entries, 0, count, null);
+            count = 0;
+        }
+    }
+}
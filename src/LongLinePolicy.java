@@ -0,0 +1,24 @@
+import java.util.Locale;
+
+/**
+ * Что делать со строкой длиннее MappedLogReader.MAX_LINE_LENGTH символов:
+ * SKIP - пропустить (учитывается как ошибка TOO_LONG), TRUNCATE - разобрать первые MAX_LINE_LENGTH символов
+ * (учитывается в ParseFailures.getTruncated, а не как ошибка),
+ * ABORT - прервать чтение файла исключением LineTooLongException.
+ */
+public enum LongLinePolicy {
+    SKIP, TRUNCATE, ABORT;
+
+    /**
+     * Политика из свойства -Dparser.longLines=skip|truncate|abort, по умолчанию SKIP
+     */
+    public static LongLinePolicy fromSystemProperties() {
+        String value = System.getProperty("parser.longLines", "skip");
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестная политика длинных строк: " + value
+                    + " (допустимо skip, truncate, abort)");
+        }
+    }
+}
@@ -1,10 +1,45 @@
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
     public static void main(String[] args) {
+        if (args.length > 0 && "--follow".equals(args[0])) {
+            followLogFile(args);
+            return;
+        }
+        if (args.length > 0 && "--index".equals(args[0])) {
+            System.exit(buildIndex(args));
+        }
+        if (args.length > 0 && "--query".equals(args[0])) {
+            System.exit(queryIndex(args));
+        }
+        if (args.length > 0 && "--summary".equals(args[0])) {
+            System.exit(summarize(args));
+        }
+        if (args.length > 0 && "--pipeline".equals(args[0])) {
+            System.exit(analyzePipeline(args));
+        }
+        if (args.length > 0) {
+            System.exit(analyzeBatch(args));
+        }
         Scanner scanner = new Scanner(System.in);
         int fileCount = 0; // Счётчик верно указанных файлов
         boolean running = true;
@@ -36,75 +71,15 @@ public class Main {
     }
 
     public static void analyzeLogFile(String path) {
-        int totalLines = 0;
-        Statistics statistics = new Statistics();
-        try (FileReader fileReader = new FileReader(path);
-             BufferedReader reader = new BufferedReader(fileReader)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                int length = line.length();
-                totalLines++;
-                if (length > 1024) {
-                    throw new LineTooLongException("Обнаружена строка длиннее 1024 символов. Длина: " + length +
-                            " символов. Строка: " + (line.length() > 100 ? line.substring(0, 100) + "..." : line));
-                }
-                try {
-                    LogEntry entry = new LogEntry(line);
-                    statistics.addEntry(entry);
-                } catch (Exception e) {
-                    System.err.println("Ошибка при разборе строки " + totalLines + ": " + e.getMessage());
-                }
-            }
-
-            System.out.println("Результаты анализа файла:");
-            System.out.println("Общее количество строк: " + totalLines);
-            System.out.println("Обработано записей: " + statistics.getEntryCount());
-            System.out.println("Общий трафик: " + statistics.getTotalTraffic() + " байт");
-            System.out.println("Средний трафик в час: " + String.format("%.2f", statistics.getTrafficRate()) + " байт/час");
-            System.out.println("Временной диапазон: " + statistics.getMinTime() + " - " + statistics.getMaxTime());
-            System.out.println();
-
-            System.out.println("\n1. Среднее количество посещений сайта за час (только обычные браузеры):");
-            System.out.println(String.format("   %.2f посещений/час", statistics.getAverageVisitsPerHour()));
-            System.out.println("\n2. Среднее количество ошибочных запросов в час:");
-            System.out.println(String.format("   %.2f ошибок/час", statistics.getAverageErrorRequestsPerHour()));
-            System.out.println("\n3. Средняя посещаемость одним пользователем (обычные браузеры):");
-            System.out.println(String.format("   %.2f посещений/пользователя", statistics.getAverageVisitsPerUser()));
-            System.out.println();
-            System.out.println("\n4. Пиковая посещаемость сайта (только обычные браузеры):");
-            System.out.println("   Максимальное количество посещений в секунду: " + statistics.getPeakVisitsPerSecond());
-
-            System.out.println("\n5. Сайты-источники трафика (только от обычных браузеров):");
-            System.out.println("   Количество уникальных доменов: " + statistics.getRefererDomains().size());
-
-            System.out.println("\n6. Максимальная активность одного пользователя (не бота):");
-            System.out.println("   Максимальное количество посещений одним пользователем: " + statistics.getMaxVisitsPerUser());
-            System.out.println(statistics.getBotStatistics());
-            System.out.println();
-            System.out.println(statistics.getErrorStatistics());
-            System.out.println();
-            System.out.println(statistics.getVisitStatistics());
-// Дополнительная детализированная статистика (опционально)
-            System.out.println("\n--- Детальная статистика ---");
-            System.out.println(statistics.getPeakVisitsStatistics());
-            System.out.println(statistics.getRefererStatistics());
-            System.out.println(statistics.getUserActivityStatistics());
-            System.out.println("Статистика существующих страниц (200):");
-           System.out.println("Количество уникальных страниц: " + statistics.getExistingPagesCount());
-//            System.out.println("Список страниц:");// слишком большой список страниц не видно статистики
-//            for (String page : statistics.getExistingPages()) {
-//                System.out.println("  - " + page);
-//            }
-
-            System.out.println();
-            System.out.println(statistics.getOsStatisticsAsString());
-
-            System.out.println("Статистика несуществующих страниц (400):");
-//            System.out.println(statistics.getNonExistingPagesAsString()); пока уберу (слишком много)
-            System.out.println("Всего несуществующих страниц (400):");
-            System.out.println(statistics.getNonExistingPagesCount());
-            //System.out.println(statistics.getBrowserStatisticsAsString()); //браузеры проценты не нужны в задании
-            System.out.println(statistics.getBrowserStatisticsDetailedAsString());
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            AnalysisResult result = new ParallelLogAnalyzer(threads, StatisticsConfig.fromSystemProperties())
+                    .analyze(Paths.get(path));
+            printReport(System.out, result);
+            System.out.println(UserAgentCache.shared());
+            System.out.println("Словарь путей: " + StringDictionary.paths());
+            System.out.println("Словарь referer: " + StringDictionary.referers());
+            System.out.println("Словарь User-Agent: " + StringDictionary.userAgents());
         } catch (LineTooLongException e) {
             System.err.println("Ошибка: " + e.getMessage());
             throw e;
@@ -113,4 +88,509 @@ public class Main {
             ex.printStackTrace();
         }
     }
+
+    /**
+     * Пакетный режим: [--threads <n>] [--format text|json] [--checkpoint-dir <папка>] [--quarantine <файл>]
+     * <файл | папка | шаблон>... С --quarantine выборка испорченных строк (см. Quarantine) записывается в файл.
+     * Возвращает код завершения: 0 - все файлы обработаны, 1 - были ошибки, 2 - неверные аргументы.
+     */
+    static int analyzeBatch(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String format = "text";
+        Path checkpointDirectory = null;
+        Path quarantineFile = null;
+        List<String> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        if (threads < 1) {
+                            throw new IllegalArgumentException("Количество потоков должно быть положительным: " + threads);
+                        }
+                        break;
+                    case "--format":
+                        format = args[++i];
+                        if (!format.equals("text") && !format.equals("json")) {
+                            throw new IllegalArgumentException("Неизвестный формат: " + format);
+                        }
+                        break;
+                    case "--checkpoint-dir":
+                        checkpointDirectory = Paths.get(args[++i]);
+                        break;
+                    case "--quarantine":
+                        quarantineFile = Paths.get(args[++i]);
+                        break;
+                    default:
+                        paths.add(args[i]);
+                }
+            }
+            if (paths.isEmpty()) {
+                throw new IllegalArgumentException("Не указаны файлы");
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Ошибка в аргументах: " + e.getMessage());
+            System.err.println("Использование: [--threads <n>] [--format text|json] [--checkpoint-dir <папка>]"
+                    + " [--quarantine <файл>] <файл | папка | шаблон>...");
+            System.err.println("               " + FOLLOW_USAGE);
+            System.err.println("               --index <файл> <папка>");
+            System.err.println("               --summary <файл> [--threads <n>]");
+            System.err.println("               " + PIPELINE_USAGE);
+            System.err.println("               " + QUERY_USAGE);
+            return 2;
+        }
+        try {
+            List<Path> files = BatchAnalyzer.expand(paths);
+            if (checkpointDirectory != null) {
+                Files.createDirectories(checkpointDirectory);
+            }
+            BatchAnalyzer.BatchResult batch = new BatchAnalyzer(threads, StatisticsConfig.fromSystemProperties(),
+                    checkpointDirectory).analyze(files);
+            if (format.equals("json")) {
+                System.out.print(JsonReport.build(batch));
+            } else {
+                printReport(System.out, batch.getTotal());
+                printFileTimings(batch);
+            }
+            if (quarantineFile != null) {
+                Quarantine.shared().writeTo(quarantineFile);
+            }
+            return batch.getFiles().stream().anyMatch(file -> file.getError() != null) ? 1 : 0;
+        } catch (IOException e) {
+            System.err.println("Ошибка: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static final String QUERY_USAGE = "--query <папка> [--from <время>] [--to <время>] [--status <код | от-до>]"
+            + " [--path <путь>] [--top <n>] [--report] [--threads <n>]";
+
+    /**
+     * Построение столбцового хранилища: --index <файл> <папка> (см. ColumnStore)
+     */
+    static int buildIndex(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Использование: --index <файл> <папка>");
+            return 2;
+        }
+        try {
+            long start = System.nanoTime();
+            ParseFailures failures = new ParseFailures();
+            long rows = ColumnStore.build(Paths.get(args[1]), Paths.get(args[2]), failures);
+            System.out.println(String.format("Записано %d записей в %s за %d мс", rows, args[2],
+                    (System.nanoTime() - start) / 1_000_000));
+            if (!failures.isEmpty()) {
+                System.out.println(failures);
+            }
+            return 0;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ошибка при построении хранилища: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Запрос к столбцовому хранилищу: количество записей, трафик и популярные пути по фильтру,
+     * с --report - полный отчёт, собранный из хранилища без разбора текста.
+     * Время - в формате ISO (2024-12-01T10:00:00+03:00); без часового пояса берётся пояс первой записи.
+     */
+    static int queryIndex(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Использование: " + QUERY_USAGE);
+            return 2;
+        }
+        try {
+            ColumnStoreReader reader = ColumnStoreReader.open(Paths.get(args[1]));
+            ColumnQuery query = ColumnQuery.all();
+            long from = Long.MIN_VALUE;
+            long to = Long.MAX_VALUE;
+            int top = 10;
+            boolean report = false;
+            int threads = Runtime.getRuntime().availableProcessors();
+            try {
+                for (int i = 2; i < args.length; i++) {
+                    switch (args[i]) {
+                        case "--from":
+                            from = parseQueryTime(args[++i], reader.getFirstOffsetSeconds());
+                            break;
+                        case "--to":
+                            to = parseQueryTime(args[++i], reader.getFirstOffsetSeconds());
+                            break;
+                        case "--status":
+                            String[] range = args[++i].split("-", 2);
+                            query = query.withStatusRange(Integer.parseInt(range[0]),
+                                    Integer.parseInt(range[range.length - 1]));
+                            break;
+                        case "--path":
+                            query = query.withPath(args[++i]);
+                            break;
+                        case "--top":
+                            top = Integer.parseInt(args[++i]);
+                            break;
+                        case "--report":
+                            report = true;
+                            break;
+                        case "--threads":
+                            threads = Integer.parseInt(args[++i]);
+                            if (threads < 1) {
+                                throw new IllegalArgumentException("Количество потоков должно быть положительным: " + threads);
+                            }
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+                    }
+                }
+                if (from != Long.MIN_VALUE || to != Long.MAX_VALUE) {
+                    query = query.withTimeRange(from, to);
+                }
+            } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException | DateTimeParseException e) {
+                System.err.println("Ошибка в аргументах: " + e.getMessage());
+                System.err.println("Использование: " + QUERY_USAGE);
+                return 2;
+            }
+            long start = System.nanoTime();
+            if (report) {
+                AnalysisResult result = reader.toStatistics(query, StatisticsConfig.fromSystemProperties(), threads);
+                printReport(System.out, result);
+            } else {
+                System.out.println("Записей: " + reader.count(query));
+                System.out.println("Трафик: " + reader.sumBytes(query) + " байт");
+                System.out.println("Популярные пути:");
+                for (Map.Entry<String, Long> entry : reader.topPaths(query, top).entrySet()) {
+                    System.out.println("  " + entry.getKey() + ": " + entry.getValue());
+                }
+            }
+            System.out.println(String.format("Хранилище: %d записей, %d блоков; запрос выполнен за %d мс",
+                    reader.getRows(), reader.getBlockCount(), (System.nanoTime() - start) / 1_000_000));
+            return 0;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ошибка при чтении хранилища: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Быстрая сводка: --summary <файл> [--threads <n>] - запросы, ошибки и трафик без полного разбора строк
+     */
+    static int summarize(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            if (args.length != 2 && !(args.length == 4 && "--threads".equals(args[2]))) {
+                throw new IllegalArgumentException("Неверное количество аргументов");
+            }
+            if (args.length == 4) {
+                threads = Integer.parseInt(args[3]);
+                if (threads < 1) {
+                    throw new IllegalArgumentException("Количество потоков должно быть положительным: " + threads);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ошибка в аргументах: " + e.getMessage());
+            System.err.println("Использование: --summary <файл> [--threads <n>]");
+            return 2;
+        }
+        try {
+            long start = System.nanoTime();
+            TrafficSummary summary = new ParallelLogAnalyzer(threads)
+                    .scan(Paths.get(args[1]), TrafficSummary.FIELDS, TrafficSummary::new);
+            System.out.println("Общее количество строк: " + summary.getLines());
+            System.out.println("Запросов: " + summary.getRequests());
+            System.out.println(String.format("Ошибочных запросов: %d (%.2f%%)", summary.getErrors(),
+                    summary.getErrorRate() * 100));
+            System.out.println("Общий трафик: " + summary.getBytes() + " байт");
+            if (!summary.getFailures().isEmpty()) {
+                System.out.println(summary.getFailures());
+            }
+            System.out.println(String.format("Время: %d мс", (System.nanoTime() - start) / 1_000_000));
+            return 0;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ошибка: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static final String PIPELINE_USAGE = "--pipeline <файл> [--parsers <n>] [--aggregators <n>]"
+            + " [--progress <секунд>]";
+
+    /**
+     * Конвейерный анализ (см. LogPipeline): отчёт и загрузка этапов; с --progress состояние этапов
+     * выводится в stderr с заданным периодом
+     */
+    static int analyzePipeline(String[] args) {
+        int parsers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int aggregators = parsers;
+        long progressSeconds = 0;
+        String path = null;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--parsers":
+                        parsers = Integer.parseInt(args[++i]);
+                        if (parsers < 1) {
+                            throw new IllegalArgumentException("Количество потоков разбора должно быть положительным: " + parsers);
+                        }
+                        break;
+                    case "--aggregators":
+                        aggregators = Integer.parseInt(args[++i]);
+                        if (aggregators < 1) {
+                            throw new IllegalArgumentException("Количество потоков агрегации должно быть положительным: "
+                                    + aggregators);
+                        }
+                        break;
+                    case "--progress":
+                        progressSeconds = Long.parseLong(args[++i]);
+                        if (progressSeconds < 1) {
+                            throw new IllegalArgumentException("Интервал должен быть положительным: " + progressSeconds);
+                        }
+                        break;
+                    default:
+                        if (path != null) {
+                            throw new IllegalArgumentException("Лишний аргумент: " + args[i]);
+                        }
+                        path = args[i];
+                }
+            }
+            if (path == null) {
+                throw new IllegalArgumentException("Не указан файл");
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Ошибка в аргументах: " + e.getMessage());
+            System.err.println("Использование: " + PIPELINE_USAGE);
+            return 2;
+        }
+        ScheduledExecutorService progress = null;
+        try {
+            LogPipeline pipeline = new LogPipeline(parsers, aggregators, StatisticsConfig.fromSystemProperties());
+            if (progressSeconds > 0) {
+                progress = Executors.newSingleThreadScheduledExecutor();
+                progress.scheduleAtFixedRate(() -> pipeline.getStages().forEach(System.err::println),
+                        progressSeconds, progressSeconds, TimeUnit.SECONDS);
+            }
+            long start = System.nanoTime();
+            AnalysisResult result = pipeline.analyze(Paths.get(path));
+            long elapsed = System.nanoTime() - start;
+            if (progress != null) {
+                progress.shutdownNow();
+            }
+            printReport(System.out, result);
+            System.out.println("Этапы конвейера:");
+            for (LogPipeline.Stage stage : pipeline.getStages()) {
+                System.out.println("  " + stage);
+            }
+            System.out.println("Узкое место: " + pipeline.getBottleneck().getName());
+            System.out.println(String.format("Время: %d мс", elapsed / 1_000_000));
+            return 0;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ошибка: " + e.getMessage());
+            return 1;
+        } finally {
+            if (progress != null) {
+                progress.shutdownNow();
+            }
+        }
+    }
+
+    private static long parseQueryTime(String text, int defaultOffsetSeconds) {
+        try {
+            return OffsetDateTime.parse(text).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.parse(text).toEpochSecond(ZoneOffset.ofTotalSeconds(defaultOffsetSeconds));
+        }
+    }
+
+    private static void printFileTimings(BatchAnalyzer.BatchResult batch) {
+        System.out.println("Обработка файлов:");
+        long totalBytes = 0;
+        for (BatchAnalyzer.FileResult file : batch.getFiles()) {
+            totalBytes += file.getBytes();
+            if (file.getError() != null) {
+                System.out.println(String.format("  %s: ошибка - %s", file.getPath(), file.getError()));
+            } else {
+                System.out.println(String.format("  %s: %d байт, %d строк, %d мс, %.2f МБ/с", file.getPath(),
+                        file.getBytes(), file.getLines(), file.getMillis(), file.getMegabytesPerSecond()));
+            }
+        }
+        double seconds = batch.getMillis() / 1000.0;
+        System.out.println(String.format("  Всего: %d файлов, %d байт, %d мс, %.2f МБ/с", batch.getFiles().size(),
+                totalBytes, batch.getMillis(), seconds > 0 ? totalBytes / 1048576.0 / seconds : 0));
+    }
+
+    private static final String FOLLOW_USAGE = "--follow <файл> [--interval <секунд>] [--report-file <файл>]"
+            + " [--from-end] [--checkpoint <файл>] [--quarantine <файл>]";
+
+    /**
+     * Режим слежения: --follow <файл> [--interval <секунд>] [--report-file <файл>] [--from-end] [--checkpoint <файл>]
+     * [--quarantine <файл>]. Отчёт выводится (или перезаписывается в файл) каждые interval секунд, до завершения процесса.
+     * С --checkpoint вместе с отчётом сохраняется контрольная точка, и следующий запуск продолжает с неё,
+     * с --quarantine - перезаписывается выборка испорченных строк.
+     */
+    static void followLogFile(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Использование: " + FOLLOW_USAGE);
+            System.exit(2);
+        }
+        Path logPath = Paths.get(args[1]);
+        long intervalSeconds = 60;
+        Path reportFile = null;
+        boolean fromEnd = false;
+        Path checkpointFile = null;
+        Path quarantineFile = null;
+        try {
+            for (int i = 2; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--interval":
+                        intervalSeconds = Long.parseLong(args[++i]);
+                        if (intervalSeconds < 1) {
+                            throw new IllegalArgumentException("Интервал должен быть положительным: " + intervalSeconds);
+                        }
+                        break;
+                    case "--report-file":
+                        reportFile = Paths.get(args[++i]);
+                        break;
+                    case "--from-end":
+                        fromEnd = true;
+                        break;
+                    case "--checkpoint":
+                        checkpointFile = Paths.get(args[++i]);
+                        break;
+                    case "--quarantine":
+                        quarantineFile = Paths.get(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Ошибка в аргументах: " + e.getMessage());
+            System.err.println("Использование: " + FOLLOW_USAGE);
+            System.exit(2); // обработчик завершения ещё не зарегистрирован
+        }
+        LogFollower follower = new LogFollower(logPath, StatisticsConfig.fromSystemProperties());
+        Path target = reportFile;
+        Path checkpoint = checkpointFile;
+        Path quarantine = quarantineFile;
+        Thread worker = Thread.currentThread();
+        // Ctrl+C: останавливаем цикл слежения и ждём последнего отчёта
+        Thread shutdownHook = new Thread(() -> {
+            follower.stop();
+            try {
+                worker.join(10_000);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        try {
+            boolean restored = checkpoint != null && follower.restore(checkpoint);
+            if (fromEnd && !restored) {
+                follower.skipExisting();
+            }
+            follower.run(LogFollower.DEFAULT_POLL_INTERVAL_MILLIS, intervalSeconds * 1000, result -> {
+                writeFollowReport(result, follower, target);
+                if (checkpoint != null) {
+                    try {
+                        follower.saveCheckpoint(checkpoint);
+                    } catch (IOException e) {
+                        System.err.println("Не удалось записать контрольную точку " + checkpoint + ": " + e.getMessage());
+                    }
+                }
+                if (quarantine != null) {
+                    try {
+                        Quarantine.shared().writeTo(quarantine);
+                    } catch (IOException e) {
+                        System.err.println("Не удалось записать выборку испорченных строк " + quarantine + ": "
+                                + e.getMessage());
+                    }
+                }
+            });
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("Ошибка при слежении за файлом:");
+            ex.printStackTrace();
+        }
+    }
+
+    private static void writeFollowReport(AnalysisResult result, LogFollower follower, Path reportFile) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+        printReport(out, result);
+        out.println(String.format("Позиция в файле: %d, ротаций: %d, обрезаний: %d",
+                follower.getOffset(), follower.getRotations(), follower.getTruncations()));
+        if (reportFile == null) {
+            System.out.print(bytes.toString(StandardCharsets.UTF_8));
+            return;
+        }
+        try {
+            // запись во временный файл и переименование, чтобы читатель не увидел отчёт наполовину
+            Path temp = reportFile.resolveSibling(reportFile.getFileName() + ".tmp");
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, reportFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Не удалось записать отчёт в " + reportFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Текстовый отчёт. Самые частые значения (SpaceSaving) зависят от порядка объединения частичных результатов,
+     * поэтому выводятся только с -Dreport.top=true: без них отчёт не зависит от числа потоков и контрольных точек
+     */
+    static void printReport(PrintStream out, AnalysisResult result) {
+        Statistics statistics = result.getStatistics();
+        out.println("Результаты анализа файла:");
+        out.println("Общее количество строк: " + result.getTotalLines());
+        out.println("Обработано записей: " + statistics.getEntryCount());
+        if (!result.getFailures().isEmpty()) {
+            out.println(result.getFailures());
+        }
+        out.println("Общий трафик: " + statistics.getTotalTraffic() + " байт");
+        out.println("Средний трафик в час: " + String.format("%.2f", statistics.getTrafficRate()) + " байт/час");
+        out.println("Временной диапазон: " + statistics.getMinTime() + " - " + statistics.getMaxTime());
+        out.println();
+
+        out.println("\n1. Среднее количество посещений сайта за час (только обычные браузеры):");
+        out.println(String.format("   %.2f посещений/час", statistics.getAverageVisitsPerHour()));
+        out.println("\n2. Среднее количество ошибочных запросов в час:");
+        out.println(String.format("   %.2f ошибок/час", statistics.getAverageErrorRequestsPerHour()));
+        out.println("\n3. Средняя посещаемость одним пользователем (обычные браузеры):");
+        out.println(String.format("   %.2f посещений/пользователя", statistics.getAverageVisitsPerUser()));
+        out.println();
+        out.println("\n4. Пиковая посещаемость сайта (только обычные браузеры):");
+        out.println("   Максимальное количество посещений в секунду: " + statistics.getPeakVisitsPerSecond());
+
+        out.println("\n5. Сайты-источники трафика (только от обычных браузеров):");
+        out.println("   Количество уникальных доменов: " + statistics.getRefererDomainsCount());
+
+        out.println("\n6. Максимальная активность одного пользователя (не бота):");
+        out.println("   Максимальное количество посещений одним пользователем: " + statistics.getMaxVisitsPerUser());
+        out.println(statistics.getBotStatistics());
+        out.println();
+        out.println(statistics.getErrorStatistics());
+        out.println();
+        out.println(statistics.getVisitStatistics());
+// Дополнительная детализированная статистика (опционально)
+        out.println("\n--- Детальная статистика ---");
+        out.println(statistics.getPeakVisitsStatistics());
+        out.println(statistics.getWindowStatistics());
+        out.println(statistics.getDistributionStatistics());
+        out.println(statistics.getRefererStatistics());
+        out.println(statistics.getUserActivityStatistics());
+        if (Boolean.getBoolean("report.top")) {
+            out.println(statistics.getTopStatistics());
+        }
+        out.println("Статистика существующих страниц (200):");
+        out.println("Количество уникальных страниц: " + statistics.getExistingPagesCount());
+//        out.println("Список страниц:");// слишком большой список страниц не видно статистики
+//        for (String page : statistics.getExistingPages()) {
+//            out.println("  - " + page);
+//        }
+
+        out.println();
+        out.println(statistics.getOsStatisticsAsString());
+
+        out.println("Статистика несуществующих страниц (400):");
+//        out.println(statistics.getNonExistingPagesAsString()); пока уберу (слишком много)
+        out.println("Всего несуществующих страниц (400):");
+        out.println(statistics.getNonExistingPagesCount());
+        //out.println(statistics.getBrowserStatisticsAsString()); //браузеры проценты не нужны в задании
+        out.println(statistics.getBrowserStatisticsDetailedAsString());
+    }
 }
\ No newline at end of file
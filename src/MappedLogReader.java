@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Чтение лога через отображение файла в память большими окнами.
+ * Границы строк ищутся прямо в отображённых байтах, строки передаются обработчику
+ * как срезы буфера без копирования и без декодирования в UTF-16.
+ */
+public class MappedLogReader {
+    public static final int MAX_LINE_LENGTH = 1024;
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Обработчик строки: байты строки находятся в buffer в диапазоне [from, to)
+     * и действительны только во время вызова.
+     */
+    public interface LineHandler {
+        void onLine(ByteBuffer buffer, int from, int to, long lineNumber);
+
+        /**
+         * Строка длиннее MAX_LINE_LENGTH символов (chars - её длина; если строка не поместилась в буфер,
+         * в [from, to) только её начало). По умолчанию чтение прерывается LineTooLongException.
+         */
+        default void onLongLine(ByteBuffer buffer, int from, int to, long lineNumber, long chars) {
+            throw tooLong(buffer, from, to, chars);
+        }
+    }
+
+    private final Path path;
+    private final int windowSize;
+
+    public MappedLogReader(Path path) {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedLogReader(Path path, int windowSize) {
+        this.path = path;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Читает весь файл, возвращает количество строк
+     */
+    public long read(LineHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel, 0, channel.size(), handler);
+        }
+    }
+
+    /**
+     * Читает строки, начинающиеся в диапазоне [start, end) открытого канала.
+     * Возвращает количество прочитанных строк.
+     */
+    public long read(FileChannel channel, long start, long end, LineHandler handler) throws IOException {
+        long lineNumber = 0;
+        long position = start;
+        while (position < end) {
+            int length = (int) Math.min(windowSize, end - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (window.get(i) == '\n') {
+                    handleLine(window, lineStart, i, ++lineNumber, handler);
+                    lineStart = i + 1;
+                }
+            }
+            if (position + length == end) {
+                // последняя строка без перевода строки
+                if (lineStart < length) {
+                    handleLine(window, lineStart, length, ++lineNumber, handler);
+                }
+                break;
+            }
+            if (lineStart == 0) {
+                // в целом окне нет ни одного перевода строки: обработчик получает начало строки,
+                // а если он не прервал чтение, остаток строки пропускается
+                long lineEnd = skipLine(channel, position + length, end);
+                handler.onLongLine(window, 0, length, ++lineNumber, lineEnd - position);
+                position = Math.min(lineEnd + 1, end);
+                continue;
+            }
+            position += lineStart;
+        }
+        return lineNumber;
+    }
+
+    // позиция перевода строки, завершающего строку, или end
+    private long skipLine(FileChannel channel, long position, long end) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+        while (position < end) {
+            probe.clear().limit((int) Math.min(probe.capacity(), end - position));
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    static void handleLine(ByteBuffer buffer, int from, int to, long lineNumber, LineHandler handler) {
+        if (to > from && buffer.get(to - 1) == '\r') {
+            to--;
+        }
+        if (to - from > MAX_LINE_LENGTH) {
+            // длина считается в символах, поэтому многобайтовые символы UTF-8 учитываются один раз
+            int chars = 0;
+            for (int i = from; i < to; i++) {
+                if ((buffer.get(i) & 0xC0) != 0x80) {
+                    chars++;
+                }
+            }
+            if (chars > MAX_LINE_LENGTH) {
+                handler.onLongLine(buffer, from, to, lineNumber, chars);
+                return;
+            }
+        }
+        handler.onLine(buffer, from, to, lineNumber);
+    }
+
+    static LineTooLongException tooLong(ByteBuffer buffer, int from, int to, long chars) {
+        byte[] head = new byte[Math.min(to - from, 400)];
+        buffer.get(from, head);
+        String line = new String(head, StandardCharsets.UTF_8);
+        return new LineTooLongException("Обнаружена строка длиннее " + MAX_LINE_LENGTH + " символов. Длина: " + chars +
+                " символов. Строка: " + (line.length() > 100 ? line.substring(0, 100) + "..." : line));
+    }
+}
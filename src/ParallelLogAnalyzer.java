@@ -0,0 +1,293 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Параллельный анализ файла: файл делится на фрагменты по границам строк,
+ * каждый фрагмент разбирается в своём потоке в собственную Statistics,
+ * после чего частичные результаты объединяются через Statistics.merge.
+ * Файлы .gz читаются через GzipLogReader: распаковка идёт параллельно, а разбор - в вызывающем потоке.
+ * Испорченные строки учитываются в AnalysisResult.getFailures и выборке Quarantine.shared(),
+ * слишком длинные - по политике LongLinePolicy.fromSystemProperties().
+ */
+public class ParallelLogAnalyzer {
+    private static final long MIN_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4; // несколько фрагментов на поток для равномерной загрузки
+
+    private final int threads;
+    private final StatisticsConfig config;
+    private final LongLinePolicy longLines = LongLinePolicy.fromSystemProperties();
+
+    public ParallelLogAnalyzer(int threads) {
+        this(threads, StatisticsConfig.exact());
+    }
+
+    public ParallelLogAnalyzer(int threads, StatisticsConfig config) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть положительным: " + threads);
+        }
+        this.threads = threads;
+        this.config = config;
+    }
+
+    public AnalysisResult analyze(Path path) throws IOException {
+        if (GzipLogReader.isGzip(path)) {
+            return analyzeGzip(path);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return analyze(path, channel, 0, channel.size());
+        }
+    }
+
+    /**
+     * Анализ с контрольной точкой (см. Checkpoint): если checkpointFile есть и относится к этому же файлу,
+     * разбирается только часть файла после неё, затем точка перезаписывается. Последняя строка без
+     * перевода строки в точку не входит (файл может ещё дописываться), но в результат попадает.
+     */
+    public AnalysisResult analyze(Path path, Path checkpointFile) throws IOException {
+        if (GzipLogReader.isGzip(path)) {
+            throw new IllegalArgumentException("Контрольные точки для файлов .gz не поддерживаются: " + path);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            AnalysisResult result = null;
+            long start = 0;
+            if (Files.exists(checkpointFile)) {
+                String reason;
+                Checkpoint checkpoint = null;
+                try {
+                    checkpoint = Checkpoint.load(checkpointFile);
+                    reason = checkpoint.mismatch(channel, config);
+                } catch (IOException e) {
+                    reason = e.getMessage();
+                }
+                if (reason == null) {
+                    result = checkpoint.getResult();
+                    start = checkpoint.getOffset();
+                } else {
+                    System.err.println("Контрольная точка " + checkpointFile + " не подходит (" + reason
+                            + "), файл анализируется с начала");
+                }
+            }
+            long size = channel.size();
+            long end = lineEnd(channel, start, size);
+            AnalysisResult added = analyze(path, channel, start, end);
+            if (result == null) {
+                result = added;
+            } else {
+                result.merge(added);
+            }
+            Checkpoint.create(path, channel, end, result).save(checkpointFile);
+            if (end < size) {
+                result.merge(analyzeRange(path, channel, end, size));
+            }
+            return result;
+        }
+    }
+
+    // разбор [start, end) фрагментами в потоках пула
+    private AnalysisResult analyze(Path path, FileChannel channel, long start, long end) throws IOException {
+        // объединяем в порядке фрагментов, чтобы результат совпадал с последовательным
+        AnalysisResult result = null;
+        for (AnalysisResult partial : forChunks(channel, start, end,
+                (from, to) -> analyzeRange(path, channel, from, to))) {
+            if (result == null) {
+                result = partial;
+            } else {
+                result.merge(partial);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Узкий анализ: из строк разбираются только поля fields (см. LogLineParser(Set)),
+     * каждый фрагмент обрабатывается своим агрегатором из factory, агрегаторы объединяются по порядку фрагментов.
+     * Для подсчётов вроде доли ошибок и трафика (STATUS, SIZE) строка не разбирается дальше размера ответа,
+     * а адрес, время и User-Agent не декодируются.
+     */
+    public <A extends FieldAggregator<A>> A scan(Path path, Set<LogField> fields, Supplier<A> factory)
+            throws IOException {
+        if (GzipLogReader.isGzip(path)) {
+            A aggregator = factory.get();
+            new GzipLogReader(path, threads).read(handler(new LogLineParser(fields), aggregator, new ParseFailures(),
+                    path.toString(), 0));
+            return aggregator;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            A result = null;
+            for (A partial : forChunks(channel, 0, channel.size(), (start, end) -> {
+                A aggregator = factory.get();
+                new MappedLogReader(path).read(channel, start, end, handler(new LogLineParser(fields), aggregator,
+                        new ParseFailures(), source(path, start), 0));
+                return aggregator;
+            })) {
+                if (result == null) {
+                    result = partial;
+                } else {
+                    result.merge(partial);
+                }
+            }
+            return result;
+        }
+    }
+
+    private ParsingLineHandler handler(LogLineParser parser, ParsingLineHandler.Sink sink, ParseFailures failures,
+                                       String source, long firstLine) {
+        return new ParsingLineHandler(parser, sink, failures, Quarantine.shared(), longLines, source, firstLine);
+    }
+
+    // описание фрагмента для выборки испорченных строк
+    private static String source(Path path, long start) {
+        return start > 0 ? path + " с позиции " + start : path.toString();
+    }
+
+    /**
+     * Агрегатор узкого анализа (см. scan); экземпляр обрабатывает один фрагмент в одном потоке.
+     * accept получает разборщик, у которого определены только поля, запрошенные в scan.
+     */
+    public interface FieldAggregator<A extends FieldAggregator<A>> extends ParsingLineHandler.Sink {
+        /**
+         * Строка не соответствует формату (в пределах запрошенных полей) или пропущена как слишком длинная
+         */
+        @Override
+        void reject(ParseResult reason);
+
+        /**
+         * Добавляет результат следующего по порядку фрагмента
+         */
+        void merge(A other);
+    }
+
+    private interface RangeTask<R> {
+        R run(long start, long end) throws IOException;
+    }
+
+    // выполняет task для фрагментов [start, end) в потоках пула; результаты - в порядке фрагментов
+    private <R> List<R> forChunks(FileChannel channel, long start, long end, RangeTask<R> task) throws IOException {
+        long[] bounds = splitByLines(channel, start, end, threads == 1 ? 1 : threads * CHUNKS_PER_THREAD);
+        List<R> results = new ArrayList<>();
+        if (bounds.length == 2) {
+            results.add(task.run(bounds[0], bounds[1]));
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<R>> futures = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                long from = bounds[i];
+                long to = bounds[i + 1];
+                futures.add(executor.submit(() -> task.run(from, to)));
+            }
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Анализ прерван", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private AnalysisResult analyzeGzip(Path path) throws IOException {
+        Statistics statistics = new Statistics(config);
+        ParseFailures failures = new ParseFailures();
+        long totalLines = new GzipLogReader(path, threads).read(handler(new LogLineParser(),
+                parser -> statistics.addEntry(new LogEntry(parser)), failures, path.toString(), 0));
+        return new AnalysisResult(statistics, totalLines, failures);
+    }
+
+    /**
+     * Разбирает строки фрагмента [start, end) в отдельную статистику
+     */
+    private AnalysisResult analyzeRange(Path path, FileChannel channel, long start, long end) throws IOException {
+        Statistics statistics = new Statistics(config);
+        ParseFailures failures = new ParseFailures();
+        long totalLines = new MappedLogReader(path).read(channel, start, end, handler(new LogLineParser(),
+                parser -> statistics.addEntry(new LogEntry(parser)), failures, source(path, start), 0));
+        return new AnalysisResult(statistics, totalLines, failures);
+    }
+
+    /**
+     * Делит [start, end) примерно на chunks частей; каждая граница сдвигается на начало следующей строки.
+     * Возвращает массив границ: фрагмент i занимает [bounds[i], bounds[i + 1]).
+     */
+    static long[] splitByLines(FileChannel channel, long start, long end, int chunks) throws IOException {
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, (end - start + chunks - 1) / chunks);
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        long position = start;
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        while (position + chunkSize < end) {
+            long boundary = nextLineStart(channel, position + chunkSize, end, probe);
+            if (boundary >= end) {
+                break;
+            }
+            bounds.add(boundary);
+            position = boundary;
+        }
+        bounds.add(end);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // позиция после последнего перевода строки в [start, size), или start, если его нет
+    private static long lineEnd(FileChannel channel, long start, long size) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        long position = size;
+        while (position > start) {
+            int length = (int) Math.min(probe.capacity(), position - start);
+            probe.clear().limit(length);
+            while (probe.hasRemaining() && channel.read(probe, position - length + probe.position()) > 0) {
+            }
+            for (int i = length - 1; i >= 0; i--) {
+                if (probe.get(i) == '\n') {
+                    return position - length + i + 1;
+                }
+            }
+            position -= length;
+        }
+        return start;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer probe) throws IOException {
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Количество отвергнутых строк по причинам (см. ParseResult), у каждой строки не больше одной причины.
+ * TOO_LONG - пропущенные слишком длинные строки (LongLinePolicy.SKIP). Строки, обрезанные для разбора
+ * (LongLinePolicy.TRUNCATE), считаются отдельно (getTruncated) и в getTotal не входят: обрезанная строка,
+ * которая не разобралась, учитывается один раз - по причине ошибки разбора.
+ */
+public class ParseFailures {
+    private final long[] counts = new long[ParseResult.values().length];
+    private long truncated;
+
+    public void add(ParseResult reason) {
+        counts[reason.ordinal()]++;
+    }
+
+    public void addTruncated() {
+        truncated++;
+    }
+
+    public long get(ParseResult reason) {
+        return counts[reason.ordinal()];
+    }
+
+    public long getTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Нет ни отвергнутых, ни обрезанных строк
+     */
+    public boolean isEmpty() {
+        return getTotal() == 0 && truncated == 0;
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (int i = 1; i < counts.length; i++) {
+            total += counts[i];
+        }
+        return total;
+    }
+
+    public void merge(ParseFailures other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        truncated += other.truncated;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(counts.length);
+        for (long count : counts) {
+            out.writeLong(count);
+        }
+        out.writeLong(truncated);
+    }
+
+    public static ParseFailures readFrom(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length != ParseResult.values().length) {
+            throw new IOException("Записано другое количество причин ошибок разбора: " + length);
+        }
+        ParseFailures failures = new ParseFailures();
+        for (int i = 0; i < length; i++) {
+            failures.counts[i] = in.readLong();
+        }
+        failures.truncated = in.readLong();
+        return failures;
+    }
+
+    /**
+     * Причины с ненулевым количеством, по одной в строке, и количество обрезанных строк
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("Строки с ошибками: " + getTotal());
+        for (ParseResult reason : ParseResult.values()) {
+            if (reason != ParseResult.OK && counts[reason.ordinal()] > 0) {
+                result.append("\n  ").append(reason.getDescription()).append(": ").append(counts[reason.ordinal()]);
+            }
+        }
+        if (truncated > 0) {
+            result.append("\nОбрезано длинных строк: ").append(truncated);
+        }
+        return result.toString();
+    }
+}
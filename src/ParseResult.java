@@ -0,0 +1,24 @@
+/**
+ * Результат разбора строки лога (см. LogLineParser.parseLine): OK или причина, по которой строка отвергнута
+ */
+public enum ParseResult {
+    OK("строка разобрана"),
+    EMPTY("пустая строка"),
+    BAD_ADDRESS("нет адреса клиента"),
+    BAD_TIMESTAMP("некорректное время"),
+    MISSING_QUOTE("нет кавычки"),
+    BAD_REQUEST("некорректный запрос"),
+    BAD_STATUS("некорректный код ответа"),
+    BAD_SIZE("размер ответа не число"),
+    TOO_LONG("строка длиннее " + MappedLogReader.MAX_LINE_LENGTH + " символов");
+
+    private final String description;
+
+    ParseResult(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
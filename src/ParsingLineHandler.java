@@ -0,0 +1,92 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Обработчик строк для MappedLogReader и GzipLogReader: строка разбирается LogLineParser,
+ * разобранная передаётся sink, отвергнутая учитывается в ParseFailures по причине
+ * и предлагается в выборку Quarantine. Исключения и вывод на каждую испорченную строку не создаются.
+ * Слишком длинные строки обрабатываются по LongLinePolicy. Экземпляр на один поток.
+ */
+public class ParsingLineHandler implements MappedLogReader.LineHandler {
+    /**
+     * Получатель разобранных строк; значения parser действительны только во время вызова
+     */
+    public interface Sink {
+        void accept(LogLineParser parser);
+
+        /**
+         * Проверка разобранной строки перед accept: OK или причина, по которой получатель её не примет
+         * (строка тогда учитывается как отвергнутая)
+         */
+        default ParseResult check(LogLineParser parser) {
+            return ParseResult.OK;
+        }
+
+        /**
+         * Строка отвергнута (уже учтена в ParseFailures обработчика)
+         */
+        default void reject(ParseResult reason) {
+        }
+    }
+
+    private final LogLineParser parser;
+    private final Sink sink;
+    private final ParseFailures failures;
+    private final Quarantine quarantine;
+    private final LongLinePolicy longLines;
+    private final String source;
+    private final long firstLine;
+
+    /**
+     * source - описание источника для выборки (файл, фрагмент), firstLine - номер строки перед первой строкой чтения
+     */
+    public ParsingLineHandler(LogLineParser parser, Sink sink, ParseFailures failures, Quarantine quarantine,
+                              LongLinePolicy longLines, String source, long firstLine) {
+        this.parser = parser;
+        this.sink = sink;
+        this.failures = failures;
+        this.quarantine = quarantine;
+        this.longLines = longLines;
+        this.source = source;
+        this.firstLine = firstLine;
+    }
+
+    @Override
+    public void onLine(ByteBuffer buffer, int from, int to, long lineNumber) {
+        ParseResult result = parser.parseLine(buffer, from, to);
+        if (result == ParseResult.OK) {
+            result = sink.check(parser);
+        }
+        if (result == ParseResult.OK) {
+            sink.accept(parser);
+        } else {
+            failures.add(result);
+            quarantine.offer(result, source, firstLine + lineNumber, buffer, from, to);
+            sink.reject(result);
+        }
+    }
+
+    @Override
+    public void onLongLine(ByteBuffer buffer, int from, int to, long lineNumber, long chars) {
+        if (longLines == LongLinePolicy.ABORT) {
+            throw MappedLogReader.tooLong(buffer, from, to, chars);
+        }
+        if (longLines == LongLinePolicy.SKIP) {
+            failures.add(ParseResult.TOO_LONG);
+            quarantine.offer(ParseResult.TOO_LONG, source, firstLine + lineNumber, buffer, from, to);
+            sink.reject(ParseResult.TOO_LONG);
+        } else {
+            // обрезка - не ошибка: если обрезанная строка не разберётся, onLine учтёт её по причине разбора
+            failures.addTruncated();
+            // первые MAX_LINE_LENGTH символов; байты продолжения UTF-8 не считаются отдельными символами
+            int end = from;
+            int count = 0;
+            while (end < to && (count < MappedLogReader.MAX_LINE_LENGTH || (buffer.get(end) & 0xC0) == 0x80)) {
+                if ((buffer.get(end) & 0xC0) != 0x80) {
+                    count++;
+                }
+                end++;
+            }
+            onLine(buffer, from, end, lineNumber);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Счётчики запросов по секундам.
+ * Пока записи укладываются в неделю, счётчики лежат в плотном массиве, индексируемом
+ * смещением от первой секунды; при большем разбросе времени счётчик переходит на IntIntHashMap.
+ * Максимум обновляется при каждом увеличении, поэтому пик не требует прохода по всем секундам.
+ */
+public class PerSecondCounter {
+    static final int MAX_DENSE_SPAN = 7 * 24 * 3600;
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private int base; // секунда, соответствующая counts[0]
+    private int[] counts;
+    private IntIntHashMap sparse;
+    private int size; // количество секунд с ненулевым счётчиком
+    private int peak;
+    private int peakSecond;
+
+    /**
+     * Прибавляет delta (> 0) к счётчику секунды, возвращает новое значение
+     */
+    public int increment(int second, int delta) {
+        int value;
+        if (sparse != null) {
+            value = sparse.increment(second, delta);
+        } else {
+            if (counts == null) {
+                counts = new int[INITIAL_CAPACITY];
+                base = second;
+            } else if (second < base || second - base >= counts.length) {
+                grow(second);
+            }
+            if (sparse != null) {
+                value = sparse.increment(second, delta);
+            } else {
+                value = counts[second - base] += delta;
+            }
+        }
+        if (value == delta) {
+            size++;
+        }
+        // при равенстве берётся более ранняя секунда, чтобы результат не зависел от порядка обновлений
+        if (value > peak || (value == peak && second < peakSecond)) {
+            peak = value;
+            peakSecond = second;
+        }
+        return value;
+    }
+
+    public int get(int second) {
+        if (sparse != null) {
+            return sparse.get(second);
+        }
+        if (counts == null || second < base || second - base >= counts.length) {
+            return 0;
+        }
+        return counts[second - base];
+    }
+
+    /**
+     * Количество секунд, в которые были запросы
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getPeak() {
+        return peak;
+    }
+
+    public int getPeakSecond() {
+        return peakSecond;
+    }
+
+    public void merge(PerSecondCounter other) {
+        other.forEach(this::increment);
+    }
+
+    public void forEach(IntIntHashMap.IntIntConsumer consumer) {
+        if (sparse != null) {
+            sparse.forEach(consumer);
+        } else if (counts != null) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    consumer.accept(base + i, counts[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Записывает ненулевые счётчики для контрольной точки (см. Checkpoint); пик восстанавливается при чтении
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        if (sparse != null) {
+            sparse.writeTo(out); // тот же формат: количество и пары секунда-счётчик
+            return;
+        }
+        out.writeInt(size);
+        if (counts != null) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    out.writeInt(base + i);
+                    out.writeInt(counts[i]);
+                }
+            }
+        }
+    }
+
+    public static PerSecondCounter readFrom(DataInput in) throws IOException {
+        PerSecondCounter counter = new PerSecondCounter();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            int second = in.readInt();
+            counter.increment(second, in.readInt());
+        }
+        return counter;
+    }
+
+    private void grow(int second) {
+        long low = Math.min(base, second);
+        long high = Math.max((long) base + counts.length - 1, second);
+        long span = high - low + 1;
+        if (span > MAX_DENSE_SPAN) {
+            // слишком большой разброс времени - переходим на хеш-таблицу
+            sparse = new IntIntHashMap(size);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    sparse.increment(base + i, counts[i]);
+                }
+            }
+            counts = null;
+            return;
+        }
+        int length = (int) Math.min(MAX_DENSE_SPAN, Math.max(span, (long) counts.length * 2));
+        int newBase = second < base ? (int) (high - length + 1) : base;
+        int[] grown = new int[length];
+        System.arraycopy(counts, 0, grown, base - newBase, counts.length);
+        counts = grown;
+        base = newBase;
+    }
+}
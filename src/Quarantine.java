@@ -0,0 +1,89 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограниченная выборка отвергнутых строк для разбора причин: по каждой причине хранятся
+ * первые perReason строк (не больше MAX_LINE_LENGTH символов каждая), остальные только считаются в ParseFailures.
+ * Поток мусорных строк одной причины не вытесняет примеры других. Потокобезопасна;
+ * после заполнения выборки offer сводится к чтению одного счётчика.
+ */
+public class Quarantine {
+    public static final int DEFAULT_PER_REASON = 100;
+
+    private static final Quarantine SHARED = new Quarantine(Integer.getInteger("quarantine.sample", DEFAULT_PER_REASON));
+
+    private final int perReason;
+    private final AtomicInteger[] taken = new AtomicInteger[ParseResult.values().length];
+    private final List<String> lines = new ArrayList<>();
+
+    public Quarantine(int perReason) {
+        if (perReason < 0) {
+            throw new IllegalArgumentException("Размер выборки не может быть отрицательным: " + perReason);
+        }
+        this.perReason = perReason;
+        for (int i = 0; i < taken.length; i++) {
+            taken[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Общая выборка процесса; размер задаётся свойством -Dquarantine.sample (строк на причину)
+     */
+    public static Quarantine shared() {
+        return SHARED;
+    }
+
+    /**
+     * Добавляет строку из buffer [from, to) в выборку, если для причины reason ещё есть место;
+     * source и lineNumber указывают, откуда строка
+     */
+    public void offer(ParseResult reason, String source, long lineNumber, ByteBuffer buffer, int from, int to) {
+        AtomicInteger counter = taken[reason.ordinal()];
+        if (counter.get() >= perReason || counter.incrementAndGet() > perReason) {
+            return;
+        }
+        int length = Math.min(to - from, MappedLogReader.MAX_LINE_LENGTH * 4);
+        byte[] bytes = new byte[length];
+        buffer.get(from, bytes);
+        String line = new String(bytes, StandardCharsets.UTF_8);
+        if (line.length() > MappedLogReader.MAX_LINE_LENGTH) {
+            line = line.substring(0, MappedLogReader.MAX_LINE_LENGTH) + "...";
+        }
+        String record = reason + "\t" + source + ":" + lineNumber + "\t" + line;
+        synchronized (lines) {
+            lines.add(record);
+        }
+    }
+
+    /**
+     * Количество строк в выборке
+     */
+    public int size() {
+        synchronized (lines) {
+            return lines.size();
+        }
+    }
+
+    /**
+     * Записывает выборку в текстовый файл: причина, источник:номер строки и сама строка через табуляцию
+     */
+    public void writeTo(Path file) throws IOException {
+        List<String> copy;
+        synchronized (lines) {
+            copy = new ArrayList<>(lines);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (String line : copy) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Поиск самых частых значений потока алгоритмом Space-Saving с фиксированной памятью.
+ * Хранится не больше capacity счётчиков; когда места нет, новое значение вытесняет
+ * значение с минимальным счётчиком и наследует его счётчик как погрешность.
+ * Гарантии: счётчик не меньше истинной частоты и превышает её не больше чем на error;
+ * любое значение с частотой больше N / capacity (N - размер потока) обязательно присутствует.
+ * Счётчики упорядочены в минимальной куче, поэтому обновление стоит O(log capacity).
+ * Позиции значений в куче ищутся через find/index/unindex/clearIndex (по умолчанию HashMap);
+ * подкласс может заменить их таблицей без объектов-ключей (см. IpSpaceSaving).
+ */
+public class SpaceSaving<K extends Comparable<K>> {
+    private final int capacity;
+    private final Map<K, Integer> positions; // значение -> позиция в куче
+    private final Object[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private int size;
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Количество счётчиков должно быть положительным: " + capacity);
+        }
+        this.capacity = capacity;
+        this.positions = new HashMap<>(capacity * 2);
+        this.keys = new Object[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+    }
+
+    public void offer(K key) {
+        offer(key, 1, 0);
+    }
+
+    private void offer(K key, long increment, long error) {
+        offer(key, find(key), increment, error);
+    }
+
+    /**
+     * position - позиция значения в куче (find) или -1; key нужен только при добавлении нового счётчика
+     */
+    @SuppressWarnings("unchecked")
+    void offer(K key, int position, long increment, long error) {
+        total += increment;
+        if (position >= 0) {
+            counts[position] += increment;
+            errors[position] += error;
+            siftDown(position);
+        } else if (size < capacity) {
+            keys[size] = key;
+            counts[size] = increment;
+            errors[size] = error;
+            index(key, size);
+            siftUp(size++);
+        } else {
+            // вытесняем значение с минимальным счётчиком (корень кучи)
+            unindex((K) keys[0]);
+            keys[0] = key;
+            errors[0] = counts[0] + error;
+            counts[0] += increment;
+            index(key, 0);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Позиция значения в куче или -1
+     */
+    int find(K key) {
+        Integer position = positions.get(key);
+        return position != null ? position : -1;
+    }
+
+    void index(K key, int position) {
+        positions.put(key, position);
+    }
+
+    void unindex(K key) {
+        positions.remove(key);
+    }
+
+    void clearIndex() {
+        positions.clear();
+    }
+
+    /**
+     * Объединяет с другой сводкой той же ёмкости (сводки Space-Saving объединяемы с сохранением гарантий)
+     */
+    @SuppressWarnings("unchecked")
+    public void merge(SpaceSaving<K> other) {
+        if (other.capacity != capacity) {
+            throw new IllegalArgumentException("Нельзя объединить сводки разной ёмкости: " + capacity + " и " + other.capacity);
+        }
+        // отсутствующее в заполненной сводке значение могло встретиться не больше её минимума раз
+        long ownMin = size == capacity ? counts[0] : 0;
+        long otherMin = other.size == other.capacity ? other.counts[0] : 0;
+        Map<K, long[]> combined = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            combined.put((K) keys[i], new long[]{counts[i] + otherMin, errors[i] + otherMin});
+        }
+        for (int i = 0; i < other.size; i++) {
+            K key = (K) other.keys[i];
+            long[] value = combined.get(key);
+            if (value != null) {
+                value[0] += other.counts[i] - otherMin;
+                value[1] += other.errors[i] - otherMin;
+            } else {
+                combined.put(key, new long[]{other.counts[i] + ownMin, other.errors[i] + ownMin});
+            }
+        }
+        List<Map.Entry<K, long[]>> entries = new ArrayList<>(combined.entrySet());
+        entries.sort((a, b) -> compare(a.getKey(), a.getValue()[0], b.getKey(), b.getValue()[0]));
+        clearIndex();
+        size = 0;
+        for (Map.Entry<K, long[]> entry : entries.subList(0, Math.min(capacity, entries.size()))) {
+            keys[size] = entry.getKey();
+            counts[size] = entry.getValue()[0];
+            errors[size] = entry.getValue()[1];
+            index(entry.getKey(), size);
+            siftUp(size++);
+        }
+        total += other.total;
+    }
+
+    /**
+     * До k самых частых значений по убыванию счётчика
+     */
+    @SuppressWarnings("unchecked")
+    public List<HeavyHitter<K>> top(int k) {
+        List<HeavyHitter<K>> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new HeavyHitter<>((K) keys[i], counts[i], errors[i]));
+        }
+        result.sort((a, b) -> compare(a.getKey(), a.getCount(), b.getKey(), b.getCount()));
+        return result.subList(0, Math.min(k, result.size()));
+    }
+
+    /**
+     * Количество обработанных значений (N)
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Максимальная погрешность счётчиков: N / capacity
+     */
+    public long getMaxError() {
+        return total / capacity;
+    }
+
+    /**
+     * Записывает сводку для контрольной точки (см. Checkpoint). Куча сохраняется как есть,
+     * поэтому восстановленная сводка вытесняет значения так же, как исходная.
+     */
+    public void writeTo(DataOutput out, KeyWriter<K> keyWriter) throws IOException {
+        out.writeInt(capacity);
+        out.writeInt(size);
+        out.writeLong(total);
+        for (int i = 0; i < size; i++) {
+            @SuppressWarnings("unchecked")
+            K key = (K) keys[i];
+            keyWriter.write(out, key);
+            out.writeLong(counts[i]);
+            out.writeLong(errors[i]);
+        }
+    }
+
+    public static <K extends Comparable<K>> SpaceSaving<K> readFrom(DataInput in, KeyReader<K> keyReader)
+            throws IOException {
+        return readFrom(in, keyReader, SpaceSaving::new);
+    }
+
+    /**
+     * Читает сводку в экземпляр, созданный factory по ёмкости (для подклассов)
+     */
+    static <K extends Comparable<K>, S extends SpaceSaving<K>> S readFrom(DataInput in, KeyReader<K> keyReader,
+                                                                          IntFunction<S> factory) throws IOException {
+        S result = factory.apply(in.readInt());
+        SpaceSaving<K> summary = result; // закрытые поля доступны только через SpaceSaving<K>
+        int size = in.readInt();
+        if (size > summary.capacity) {
+            throw new IOException("Повреждённая сводка Space-Saving: " + size + " счётчиков при ёмкости " + summary.capacity);
+        }
+        summary.total = in.readLong();
+        for (int i = 0; i < size; i++) {
+            K key = keyReader.read(in);
+            summary.keys[i] = key;
+            summary.counts[i] = in.readLong();
+            summary.errors[i] = in.readLong();
+            summary.index(key, i);
+        }
+        summary.size = size;
+        return result;
+    }
+
+    public interface KeyWriter<K> {
+        void write(DataOutput out, K key) throws IOException;
+    }
+
+    public interface KeyReader<K> {
+        K read(DataInput in) throws IOException;
+    }
+
+    // по убыванию счётчика, при равенстве - по значению, чтобы порядок был детерминированным
+    private int compare(K a, long countA, K b, long countB) {
+        if (countA != countB) {
+            return Long.compare(countB, countA);
+        }
+        return a.compareTo(b);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (counts[parent] <= counts[i]) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                break;
+            }
+            int smallest = left + 1 < size && counts[left + 1] < counts[left] ? left + 1 : left;
+            if (counts[i] <= counts[smallest]) {
+                break;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void swap(int i, int j) {
+        Object key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+        long error = errors[i];
+        errors[i] = errors[j];
+        errors[j] = error;
+        index((K) keys[i], i);
+        index((K) keys[j], j);
+    }
+
+    /**
+     * Частое значение: истинная частота лежит в диапазоне [count - error, count]
+     */
+    public static class HeavyHitter<K> {
+        private final K key;
+        private final long count;
+        private final long error;
+
+        HeavyHitter(K key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        /**
+         * Гарантированная нижняя граница частоты
+         */
+        public long getGuaranteedCount() {
+            return count - error;
+        }
+    }
+}
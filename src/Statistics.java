@@ -1,73 +1,139 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.time.ZoneOffset;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class Statistics {
-    private int totalTraffic;
-    private LocalDateTime minTime;
-    private LocalDateTime maxTime;
+    // сколько последних минут и часов хранится в рядах (по умолчанию сутки и 30 дней)
+    static final int MINUTE_WINDOWS = Integer.getInteger("statistics.minuteWindows", 24 * 60);
+    static final int HOUR_WINDOWS = Integer.getInteger("statistics.hourWindows", 30 * 24);
+
+    private final StatisticsConfig config;
+    private long totalTraffic;
+    private long minTime; // секунды от 1970-01-01T00:00:00Z, Long.MAX_VALUE пока нет записей
+    private long maxTime;
+    private int minTimeOffset; // смещение часового пояса записей с minTime и maxTime
+    private int maxTimeOffset;
     private int entryCount;
+    // страницы хранятся номерами из StringDictionary.paths(), строкой - только если номер не выдан
+    private IntIntHashMap existingPageIds;
+    private IntIntHashMap notExistingPageIds;
     private Set<String> existingPages;
     private Set<String> notExistingPages;
     private Map<String, Integer> osCount;
     private Map<String, Integer> browserCount;
-    private Set<LogEntry> logEntries;
+    private long[] agentTypeCount; // запросы по типам клиентов, индекс - UserAgent.getAgentTypeIndex
     private int errorRequests; // количество ошибочных запросов (4xx и 5xx)
     private int botRequests; // количество запросов от ботов
     private int humanRequests; // количество запросов от реальных пользователей
-    private Set<String> humanUserIPs; // уникальные IP реальных пользователей
+    private IpCountMap humanUserIPs; // уникальные IP реальных пользователей (в приближённом режиме null)
     private Map<Integer, Integer> visitsPerSecond; // для пиковой посещаемости в секунду
     private Set<String> refererDomains; // для списка сайтов-источников
     private Map<String, Integer> visitsPerHumanUser; // для максимальной посещаемости одним пользователем
-    private Map<Integer, Integer> regularVisitsPerSecond; // посещения в секунду (только обычные браузеры)
-    private Set<String> regularRefererDomains; // домены из referer (только обычные браузеры)
-    private Map<String, Integer> visitsPerRegularUser; // посещения по пользователям (только обычные браузеры)
+    private PerSecondCounter regularVisitsPerSecond; // посещения в секунду (только обычные браузеры)
+    private IntIntHashMap regularRefererDomainIds; // домены из referer (только обычные браузеры), номера из StringDictionary.domains()
+    private Set<String> regularRefererDomains; // домены без номера в словаре
+    private IntIntHashMap refererDomainCache; // номер referer -> номер домена + 2 (1 - в referer нет домена)
+    private IpCountMap visitsPerRegularUser; // посещения по пользователям (в приближённом режиме null)
+    private int maxVisitsPerUser; // максимум visitsPerRegularUser, обновляется при добавлении
+    private long mostActiveIpHigh; // IP с максимумом посещений в двоичном виде
+    private long mostActiveIpLow;
     private int regularBrowserRequests; // счетчик запросов от обычных браузеров
+    // скетчи уникальных значений для приближённого режима (в точном режиме null)
+    private HyperLogLog existingPagesSketch;
+    private HyperLogLog notExistingPagesSketch;
+    private HyperLogLog humanUserIPsSketch;
+    private HyperLogLog regularRefererDomainsSketch;
+    private HyperLogLog regularUserIPsSketch;
+    // самые частые значения по измерениям, фиксированная память; IP хранятся отдельно в двоичном виде
+    private final Map<TopDimension, SpaceSaving<String>> topValues;
+    private IpSpaceSaving topIps;
+    // ряды по минутам и часам с ограниченной глубиной хранения
+    private TimeWindowSeries minuteWindows;
+    private TimeWindowSeries hourWindows;
+    // размеры ответов: все и по классам кода (индекс - первая цифра кода, 0 - коды вне 100-599)
+    private LogHistogram responseSizes = new LogHistogram();
+    private final LogHistogram[] responseSizesByClass = new LogHistogram[6];
 
     public Statistics() {
+        this(StatisticsConfig.exact());
+    }
+
+    public Statistics(StatisticsConfig config) {
+        this.config = config;
         this.totalTraffic = 0;
-        this.minTime = null;
-        this.maxTime = null;
+        this.minTime = Long.MAX_VALUE;
+        this.maxTime = Long.MIN_VALUE;
         this.entryCount = 0;
+        this.existingPageIds = new IntIntHashMap();
+        this.notExistingPageIds = new IntIntHashMap();
         this.existingPages = new HashSet<>();
         this.notExistingPages = new HashSet<>();
         this.osCount = new HashMap<>();
         this.browserCount = new HashMap<>();
-        this.logEntries = new HashSet<>();
+        this.agentTypeCount = new long[UserAgent.agentTypeCount()];
         this.errorRequests = 0;
         this.botRequests = 0;
         this.humanRequests = 0;
-        this.humanUserIPs = new HashSet<>();
-        this.logEntries = new HashSet<>();
         this.visitsPerSecond = new HashMap<>();
         this.refererDomains = new HashSet<>();
         this.visitsPerHumanUser = new HashMap<>();
-        this.regularVisitsPerSecond = new HashMap<>();
+        this.regularVisitsPerSecond = new PerSecondCounter();
+        this.regularRefererDomainIds = new IntIntHashMap();
         this.regularRefererDomains = new HashSet<>();
-        this.visitsPerRegularUser = new HashMap<>();
+        this.refererDomainCache = new IntIntHashMap();
         this.regularBrowserRequests = 0;
+        if (config.isApproximate()) {
+            this.existingPagesSketch = new HyperLogLog(config.getHllPrecision());
+            this.notExistingPagesSketch = new HyperLogLog(config.getHllPrecision());
+            this.humanUserIPsSketch = new HyperLogLog(config.getHllPrecision());
+            this.regularRefererDomainsSketch = new HyperLogLog(config.getHllPrecision());
+            this.regularUserIPsSketch = new HyperLogLog(config.getHllPrecision());
+        } else {
+            this.humanUserIPs = new IpCountMap();
+            this.visitsPerRegularUser = new IpCountMap();
+        }
+        this.topValues = new EnumMap<>(TopDimension.class);
+        for (TopDimension dimension : TopDimension.values()) {
+            if (dimension != TopDimension.IP) {
+                topValues.put(dimension, new SpaceSaving<>(config.getTopKCapacity(dimension)));
+            }
+        }
+        this.topIps = new IpSpaceSaving(config.getTopKCapacity(TopDimension.IP));
+        this.minuteWindows = new TimeWindowSeries(60, MINUTE_WINDOWS);
+        this.hourWindows = new TimeWindowSeries(3600, HOUR_WINDOWS);
+        for (int i = 0; i < responseSizesByClass.length; i++) {
+            responseSizesByClass[i] = new LogHistogram();
+        }
     }
 
     public void addEntry(LogEntry entry) {
-        logEntries.add(entry);
+        this.entryCount++;
         //общий трафик
         this.totalTraffic += entry.getDataSize();
         //минимальное и максимальное время
-        LocalDateTime entryTime = entry.getDateTime();
-        if (this.minTime == null || entryTime.isBefore(this.minTime)) {
+        long entryTime = entry.getEpochSecond();
+        if (entryTime < this.minTime) {
             this.minTime = entryTime;
+            this.minTimeOffset = entry.getOffsetSeconds();
         }
-        if (this.maxTime == null || entryTime.isAfter(this.maxTime)) {
+        if (entryTime > this.maxTime) {
             this.maxTime = entryTime;
+            this.maxTimeOffset = entry.getOffsetSeconds();
         }
+        String path = entry.getPath(); // строка из словаря, не копия
+        topValues.get(TopDimension.PATH).offer(path);
         // страницы с кодом 200
         if (entry.getResponseCode() == 200) {
-            existingPages.add(entry.getPath());
+            addDistinct(existingPageIds, existingPages, existingPagesSketch, entry.getPathId(), path);
         }
         //не сущ. стр
         if (entry.getResponseCode() == 404) {
-            notExistingPages.add(entry.getPath());
+            addDistinct(notExistingPageIds, notExistingPages, notExistingPagesSketch, entry.getPathId(), path);
+            topValues.get(TopDimension.NOT_FOUND_PATH).offer(path);
         }
         // ошибочные запросы (4xx или 5xx)
         int responseCode = entry.getResponseCode();
@@ -76,27 +142,314 @@ public class Statistics {
         }
 
         // подсчет ботов и реальных пользователей
-        if (!entry.getUserAgent().isBot()) { // Только не боты
+        UserAgent userAgent = entry.getUserAgent();
+        long ipHigh = entry.getIpHigh();
+        long ipLow = entry.getIpLow();
+        if (!userAgent.isBot()) { // Только не боты
             regularBrowserRequests++;
+            if (humanUserIPs != null) {
+                humanUserIPs.increment(ipHigh, ipLow, 1);
+            } else {
+                humanUserIPsSketch.addHash(IpAddress.hash(ipHigh, ipLow));
+            }
+        }
+        String userAgentString = userAgent.getOriginalUserAgentString();
+        if (userAgentString != null && !userAgentString.isEmpty()) {
+            topValues.get(TopDimension.USER_AGENT).offer(userAgentString);
         }
+        agentTypeCount[userAgent.getAgentTypeIndex()]++;
         // пиковая посещаемость в секунду
-        long epochSecond = entry.getDateTime().toEpochSecond(java.time.ZoneOffset.UTC);
-        int secondKey = (int) epochSecond;
-        regularVisitsPerSecond.put(secondKey,
-                regularVisitsPerSecond.getOrDefault(secondKey, 0) + 1);
-
-        // домены из referer
-        if (entry.getReferer() != null && !entry.getReferer().isEmpty() && !entry.getReferer().equals("-")) {
+        int secondKey = (int) entryTime;
+        regularVisitsPerSecond.increment(secondKey, 1);
+
+        // домены из referer; домен разбирается один раз на каждый различный referer
+        int refererId = entry.getRefererId();
+        int cachedDomain = refererId != StringDictionary.NO_ID ? refererDomainCache.get(refererId) : 0;
+        if (cachedDomain > 1) {
+            addRefererDomain(cachedDomain - 2, StringDictionary.domains().get(cachedDomain - 2));
+        } else if (cachedDomain == 0 && entry.getReferer() != null
+                && !entry.getReferer().isEmpty() && !entry.getReferer().equals("-")) {
             String domain = extractDomainFromReferer(entry.getReferer());
+            int domainId = domain != null ? StringDictionary.domains().idOf(domain) : StringDictionary.NO_ID;
+            if (refererId != StringDictionary.NO_ID && (domain == null || domainId != StringDictionary.NO_ID)) {
+                refererDomainCache.increment(refererId, domainId + 2);
+            }
             if (domain != null) {
-                regularRefererDomains.add(domain);
+                addRefererDomain(domainId, domain);
             }
         }
 
+        // ряды по минутам и часам
+        boolean error = responseCode >= 400 && responseCode < 600;
+        long userHash = IpAddress.hash(ipHigh, ipLow);
+        minuteWindows.add(entryTime, entry.getOffsetSeconds(), error, entry.getDataSize(), !userAgent.isBot(), userHash);
+        hourWindows.add(entryTime, entry.getOffsetSeconds(), error, entry.getDataSize(), !userAgent.isBot(), userHash);
+
+        // распределение размеров ответов
+        responseSizes.record(entry.getDataSize());
+        responseSizesByClass[statusClass(responseCode)].record(entry.getDataSize());
+
         // посещения по пользователям
-        String ip = entry.getIpAddress();
-        visitsPerRegularUser.put(ip,
-                visitsPerRegularUser.getOrDefault(ip, 0) + 1);
+        topIps.offer(ipHigh, ipLow);
+        if (visitsPerRegularUser != null) {
+            updateMostActiveUser(ipHigh, ipLow, visitsPerRegularUser.increment(ipHigh, ipLow, 1));
+        } else {
+            regularUserIPsSketch.addHash(IpAddress.hash(ipHigh, ipLow));
+        }
+    }
+
+    /**
+     * Добавляет к текущей статистике частичную статистику other,
+     * например собранную другим потоком по своему фрагменту файла
+     */
+    public void merge(Statistics other) {
+        if (!config.equals(other.config)) {
+            throw new IllegalArgumentException("Нельзя объединить статистику с разными настройками");
+        }
+        this.totalTraffic += other.totalTraffic;
+        if (other.minTime < this.minTime) {
+            this.minTime = other.minTime;
+            this.minTimeOffset = other.minTimeOffset;
+        }
+        if (other.maxTime > this.maxTime) {
+            this.maxTime = other.maxTime;
+            this.maxTimeOffset = other.maxTimeOffset;
+        }
+        this.entryCount += other.entryCount;
+        other.existingPageIds.forEach((id, count) -> existingPageIds.increment(id, count));
+        other.notExistingPageIds.forEach((id, count) -> notExistingPageIds.increment(id, count));
+        existingPages.addAll(other.existingPages);
+        notExistingPages.addAll(other.notExistingPages);
+        if (config.isApproximate()) {
+            existingPagesSketch.merge(other.existingPagesSketch);
+            notExistingPagesSketch.merge(other.notExistingPagesSketch);
+            humanUserIPsSketch.merge(other.humanUserIPsSketch);
+            regularRefererDomainsSketch.merge(other.regularRefererDomainsSketch);
+            regularUserIPsSketch.merge(other.regularUserIPsSketch);
+        } else {
+            other.humanUserIPs.forEach((high, low, count) -> humanUserIPs.increment(high, low, count));
+            other.visitsPerRegularUser.forEach((high, low, count) ->
+                    updateMostActiveUser(high, low, visitsPerRegularUser.increment(high, low, count)));
+        }
+        topValues.forEach((dimension, top) -> top.merge(other.topValues.get(dimension)));
+        topIps.merge(other.topIps);
+        minuteWindows.merge(other.minuteWindows);
+        hourWindows.merge(other.hourWindows);
+        responseSizes.merge(other.responseSizes);
+        for (int i = 0; i < responseSizesByClass.length; i++) {
+            responseSizesByClass[i].merge(other.responseSizesByClass[i]);
+        }
+        other.osCount.forEach((key, count) -> osCount.merge(key, count, Integer::sum));
+        other.browserCount.forEach((key, count) -> browserCount.merge(key, count, Integer::sum));
+        for (int i = 0; i < agentTypeCount.length; i++) {
+            agentTypeCount[i] += other.agentTypeCount[i];
+        }
+        this.errorRequests += other.errorRequests;
+        this.botRequests += other.botRequests;
+        this.humanRequests += other.humanRequests;
+        other.visitsPerSecond.forEach((key, count) -> visitsPerSecond.merge(key, count, Integer::sum));
+        refererDomains.addAll(other.refererDomains);
+        other.visitsPerHumanUser.forEach((key, count) -> visitsPerHumanUser.merge(key, count, Integer::sum));
+        regularVisitsPerSecond.merge(other.regularVisitsPerSecond);
+        other.regularRefererDomainIds.forEach((id, count) -> regularRefererDomainIds.increment(id, count));
+        regularRefererDomains.addAll(other.regularRefererDomains);
+        this.regularBrowserRequests += other.regularBrowserRequests;
+    }
+
+    /**
+     * Записывает состояние для контрольной точки (см. Checkpoint) потоком, без промежуточных объектов.
+     * Номера StringDictionary действительны только в текущем процессе, поэтому страницы и домены
+     * записываются строками; кэш доменов по referer не записывается и заполняется заново.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(totalTraffic);
+        out.writeLong(minTime);
+        out.writeLong(maxTime);
+        out.writeInt(minTimeOffset);
+        out.writeInt(maxTimeOffset);
+        out.writeInt(entryCount);
+        writeDistinct(out, existingPageIds, existingPages, StringDictionary.paths());
+        writeDistinct(out, notExistingPageIds, notExistingPages, StringDictionary.paths());
+        writeCounts(out, osCount);
+        writeCounts(out, browserCount);
+        writeCounts(out, agentTypeCount);
+        out.writeInt(errorRequests);
+        out.writeInt(botRequests);
+        out.writeInt(humanRequests);
+        out.writeInt(visitsPerSecond.size());
+        for (Map.Entry<Integer, Integer> entry : visitsPerSecond.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        writeStrings(out, refererDomains);
+        writeCounts(out, visitsPerHumanUser);
+        regularVisitsPerSecond.writeTo(out);
+        writeDistinct(out, regularRefererDomainIds, regularRefererDomains, StringDictionary.domains());
+        if (config.isApproximate()) {
+            existingPagesSketch.writeTo(out);
+            notExistingPagesSketch.writeTo(out);
+            humanUserIPsSketch.writeTo(out);
+            regularRefererDomainsSketch.writeTo(out);
+            regularUserIPsSketch.writeTo(out);
+        } else {
+            humanUserIPs.writeTo(out);
+            visitsPerRegularUser.writeTo(out);
+        }
+        out.writeInt(maxVisitsPerUser);
+        IpAddress.writeTo(out, mostActiveIpHigh, mostActiveIpLow);
+        out.writeInt(regularBrowserRequests);
+        for (TopDimension dimension : TopDimension.values()) {
+            if (dimension != TopDimension.IP) {
+                topValues.get(dimension).writeTo(out, DataOutput::writeUTF);
+            }
+        }
+        topIps.writeTo(out, (output, ip) -> IpAddress.writeTo(output, ip.getHigh(), ip.getLow()));
+        minuteWindows.writeTo(out);
+        hourWindows.writeTo(out);
+        responseSizes.writeTo(out);
+        for (LogHistogram histogram : responseSizesByClass) {
+            histogram.writeTo(out);
+        }
+    }
+
+    /**
+     * Читает состояние, записанное writeTo с теми же настройками
+     */
+    static Statistics readFrom(DataInput in, StatisticsConfig config) throws IOException {
+        Statistics statistics = new Statistics(config);
+        statistics.totalTraffic = in.readLong();
+        statistics.minTime = in.readLong();
+        statistics.maxTime = in.readLong();
+        statistics.minTimeOffset = in.readInt();
+        statistics.maxTimeOffset = in.readInt();
+        statistics.entryCount = in.readInt();
+        readDistinct(in, statistics.existingPageIds, statistics.existingPages, StringDictionary.paths());
+        readDistinct(in, statistics.notExistingPageIds, statistics.notExistingPages, StringDictionary.paths());
+        readCounts(in, statistics.osCount);
+        readCounts(in, statistics.browserCount);
+        readCounts(in, statistics.agentTypeCount);
+        statistics.errorRequests = in.readInt();
+        statistics.botRequests = in.readInt();
+        statistics.humanRequests = in.readInt();
+        for (int i = in.readInt(); i > 0; i--) {
+            int second = in.readInt();
+            statistics.visitsPerSecond.put(second, in.readInt());
+        }
+        readStrings(in, statistics.refererDomains);
+        readCounts(in, statistics.visitsPerHumanUser);
+        statistics.regularVisitsPerSecond = PerSecondCounter.readFrom(in);
+        readDistinct(in, statistics.regularRefererDomainIds, statistics.regularRefererDomains,
+                StringDictionary.domains());
+        if (config.isApproximate()) {
+            statistics.existingPagesSketch = HyperLogLog.readFrom(in);
+            statistics.notExistingPagesSketch = HyperLogLog.readFrom(in);
+            statistics.humanUserIPsSketch = HyperLogLog.readFrom(in);
+            statistics.regularRefererDomainsSketch = HyperLogLog.readFrom(in);
+            statistics.regularUserIPsSketch = HyperLogLog.readFrom(in);
+        } else {
+            statistics.humanUserIPs = IpCountMap.readFrom(in);
+            statistics.visitsPerRegularUser = IpCountMap.readFrom(in);
+        }
+        statistics.maxVisitsPerUser = in.readInt();
+        long[] ip = new long[2];
+        IpAddress.readFrom(in, ip);
+        statistics.mostActiveIpHigh = ip[0];
+        statistics.mostActiveIpLow = ip[1];
+        statistics.regularBrowserRequests = in.readInt();
+        for (TopDimension dimension : TopDimension.values()) {
+            if (dimension != TopDimension.IP) {
+                statistics.topValues.put(dimension, SpaceSaving.readFrom(in, DataInput::readUTF));
+            }
+        }
+        statistics.topIps = IpSpaceSaving.readFrom(in);
+        statistics.minuteWindows = TimeWindowSeries.readFrom(in);
+        statistics.hourWindows = TimeWindowSeries.readFrom(in);
+        statistics.responseSizes = LogHistogram.readFrom(in);
+        for (int i = 0; i < statistics.responseSizesByClass.length; i++) {
+            statistics.responseSizesByClass[i] = LogHistogram.readFrom(in);
+        }
+        return statistics;
+    }
+
+    // значения с номерами из словаря и без них - одним списком строк со счётчиками
+    private static void writeDistinct(DataOutput out, IntIntHashMap ids, Set<String> values,
+                                      StringDictionary dictionary) throws IOException {
+        out.writeInt(ids.size() + values.size());
+        try {
+            ids.forEach((id, count) -> {
+                try {
+                    out.writeUTF(dictionary.get(id));
+                    out.writeInt(count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (String value : values) {
+            out.writeUTF(value);
+            out.writeInt(1);
+        }
+    }
+
+    private static void readDistinct(DataInput in, IntIntHashMap ids, Set<String> values,
+                                     StringDictionary dictionary) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            String value = in.readUTF();
+            int count = in.readInt();
+            int id = dictionary.idOf(value);
+            if (id != StringDictionary.NO_ID) {
+                ids.increment(id, count);
+            } else {
+                values.add(value);
+            }
+        }
+    }
+
+    private static void writeCounts(DataOutput out, Map<String, Integer> counts) throws IOException {
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    private static void readCounts(DataInput in, Map<String, Integer> counts) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            String key = in.readUTF();
+            counts.put(key, in.readInt());
+        }
+    }
+
+    private static void writeCounts(DataOutput out, long[] counts) throws IOException {
+        out.writeInt(counts.length);
+        for (long count : counts) {
+            out.writeLong(count);
+        }
+    }
+
+    private static void readCounts(DataInput in, long[] counts) throws IOException {
+        int length = in.readInt();
+        if (length != counts.length) {
+            throw new IOException("Записано другое количество счётчиков: " + length + " (ожидается " + counts.length + ")");
+        }
+        for (int i = 0; i < length; i++) {
+            counts[i] = in.readLong();
+        }
+    }
+
+    private static void writeStrings(DataOutput out, Set<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static void readStrings(DataInput in, Set<String> values) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            values.add(in.readUTF());
+        }
     }
 
 //            else {
@@ -116,87 +469,56 @@ public class Statistics {
 
     // подсчёт среднего количества посещений сайта за час
     public double getAverageVisitsPerHour() {
-        if (minTime == null || maxTime == null) {
+        if (entryCount == 0) {
             return 0.0;
         }
-        long hoursBetween = ChronoUnit.HOURS.between(minTime, maxTime);
+        long hoursBetween = getHoursBetween();
         if (hoursBetween < 1) {
             hoursBetween = 1;
         }
-        // подсчет запросов только от обычных браузеров (не ботов)
-        long regularBrowserRequests = logEntries.stream()
-                .filter(entry -> entry.getUserAgent().isRegularBrowser())
-                .count();
+        // запросы только от обычных браузеров (не ботов)
         return (double) regularBrowserRequests / hoursBetween;
     }
 
     // подсчёт среднего количества ошибочных запросов в час
     public double getAverageErrorRequestsPerHour() {
-        if (minTime == null || maxTime == null) {
+        if (entryCount == 0) {
             return 0.0;
         }
-        long hoursBetween = ChronoUnit.HOURS.between(minTime, maxTime);
+        long hoursBetween = getHoursBetween();
         if (hoursBetween < 1) {
             hoursBetween = 1;
         }
-        // подсчет ошибочных запросов (4xx и 5xx)
-        long errorRequestsCount = logEntries.stream()
-                .filter(entry -> {
-                    int code = entry.getResponseCode();
-                    return code >= 400 && code < 600;
-                })
-                .count();
-        return (double) errorRequestsCount / hoursBetween;
+        // ошибочные запросы (4xx и 5xx)
+        return (double) errorRequests / hoursBetween;
     }
 
     // ср. посещаемость одним пользователем
     public double getAverageVisitsPerUser() {
-        // получение уникальных IP обычных браузеров (не ботов)
-        Set<String> uniqueRegularUserIPs = logEntries.stream()
-                .filter(entry -> entry.getUserAgent().isRegularBrowser())
-                .map(LogEntry::getIpAddress)
-                .collect(Collectors.toSet());
-
-        // общее количество запросов от обычных браузеров
-        long totalRegularBrowserRequests = logEntries.stream()
-                .filter(entry -> entry.getUserAgent().isRegularBrowser())
-                .count();
-        if (uniqueRegularUserIPs.isEmpty() || totalRegularBrowserRequests == 0) {
+        // запросы обычных браузеров (не ботов) на один уникальный IP
+        long uniqueUsers = getUniqueHumanUsers();
+        if (uniqueUsers == 0 || regularBrowserRequests == 0) {
             return 0.0;
         }
-        return (double) totalRegularBrowserRequests / uniqueRegularUserIPs.size();
+        return (double) regularBrowserRequests / uniqueUsers;
     }
 
     // статистика по ботам и обычным браузерам
     public String getBotStatistics() {
-        long totalRequests = logEntries.size();
-
-        Map<String, Long> agentTypeStats = logEntries.stream()
-                .collect(Collectors.groupingBy(
-                        entry -> entry.getUserAgent().getAgentType(),
-                        Collectors.counting()
-                ));
-
-        long regularBrowserCount = logEntries.stream()
-                .filter(entry -> entry.getUserAgent().isRegularBrowser())
-                .count();
-
-        long botCount = totalRequests - regularBrowserCount;
-
-        long uniqueRegularUsers = logEntries.stream()
-                .filter(entry -> entry.getUserAgent().isRegularBrowser())
-                .map(LogEntry::getIpAddress)
-                .distinct()
-                .count();
+        long totalRequests = entryCount;
+        long uniqueRegularUsers = getUniqueHumanUsers();
 
         StringBuilder sb = new StringBuilder();
         sb.append("Статистика по типам клиентов:\n");
         sb.append(String.format("  Всего запросов: %d\n", totalRequests));
 
-        agentTypeStats.forEach((type, count) -> {
-            double percentage = totalRequests > 0 ? (double) count / totalRequests * 100 : 0;
-            sb.append(String.format("  %s: %d (%.2f%%)\n", type, count, percentage));
-        });
+        for (int type = 0; type < agentTypeCount.length; type++) {
+            long count = agentTypeCount[type];
+            if (count > 0) {
+                double percentage = totalRequests > 0 ? (double) count / totalRequests * 100 : 0;
+                sb.append(String.format("  %s: %d (%.2f%%)\n", UserAgent.agentTypeName(type), count, percentage));
+            }
+        }
 
         sb.append(String.format("  Уникальных IP обычных пользователей: %d\n", uniqueRegularUsers));
         return sb.toString();
@@ -204,13 +526,8 @@ public class Statistics {
 
     // статистика ошибок
     public String getErrorStatistics() {
-        long totalRequests = logEntries.size();
-        long errorCount = logEntries.stream()
-                .filter(entry -> {
-                    int code = entry.getResponseCode();
-                    return code >= 400 && code < 600;
-                })
-                .count();
+        long totalRequests = entryCount;
+        long errorCount = errorRequests;
         double avgErrorsPerHour = getAverageErrorRequestsPerHour();
         StringBuilder sb = new StringBuilder();
         sb.append("Статистика ошибок:\n");
@@ -223,15 +540,8 @@ public class Statistics {
 
     // статистика посещаемости
     public String getVisitStatistics() {
-        long humanCount = logEntries.stream()
-                .filter(entry -> entry.getUserAgent().isRegularBrowser()) // ИСПРАВЛЕНО: используем isRegularBrowser()
-                .count();
-
-        long uniqueHumanIPs = logEntries.stream()
-                .filter(entry -> entry.getUserAgent().isRegularBrowser()) // ИСПРАВЛЕНО: используем isRegularBrowser()
-                .map(LogEntry::getIpAddress)
-                .distinct()
-                .count();
+        long humanCount = regularBrowserRequests;
+        long uniqueHumanIPs = getUniqueHumanUsers();
 
         double avgVisitsPerHour = getAverageVisitsPerHour();
         double avgVisitsPerUser = getAverageVisitsPerUser();
@@ -272,7 +582,7 @@ public class Statistics {
     }
 
     public Set<String> getExistingPages() {
-        return new HashSet<>(existingPages); // возвращаем копию для защиты от изменений
+        return distinctValues(existingPageIds, existingPages, StringDictionary.paths()); // копия для защиты от изменений
     }
 
     public Map<String, Double> getOsStatistics() {
@@ -302,24 +612,26 @@ public class Statistics {
     }
 
     public int getExistingPagesCount() {
-        return existingPages.size();
+        return countDistinct(existingPageIds, existingPages, existingPagesSketch);
     }
 
     public Set<String> getNonExistingPages() {
-        return new HashSet<>(notExistingPages);
+        return distinctValues(notExistingPageIds, notExistingPages, StringDictionary.paths());
     }
 
     public int getNonExistingPagesCount() {
-        return notExistingPages.size();
+        return countDistinct(notExistingPageIds, notExistingPages, notExistingPagesSketch);
     }
 
     public String getNonExistingPagesAsString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Список несуществующих страниц (404):\n");
-        if (notExistingPages.isEmpty()) {
+        if (config.isApproximate()) {
+            sb.append("  Список недоступен в приближённом режиме\n");
+        } else if (getNonExistingPagesCount() == 0) {
             sb.append("  Нет несуществующих страниц\n");
         } else {
-            for (String page : notExistingPages) {
+            for (String page : getNonExistingPages()) {
                 sb.append("  - ").append(page).append("\n");
             }
         }
@@ -422,10 +734,10 @@ public class Statistics {
     }
 
     public double getTrafficRate() {
-        if (minTime == null || maxTime == null || totalTraffic == 0) {
+        if (entryCount == 0 || totalTraffic == 0) {
             return 0.0;
         }
-        long hoursBetween = ChronoUnit.HOURS.between(minTime, maxTime);
+        long hoursBetween = getHoursBetween();
         //считаем как 1 час чтобы избежать деления на 0
         if (hoursBetween < 1) {
             hoursBetween = 1;
@@ -434,15 +746,40 @@ public class Statistics {
         return (double) totalTraffic / hoursBetween;
     }
 
-    public int getTotalTraffic() {
+    public long getTotalTraffic() {
         return totalTraffic;
     }
 
+    // полных часов между первой и последней записью
+    private long getHoursBetween() {
+        return (maxTime - minTime) / 3600;
+    }
+
     public LocalDateTime getMinTime() {
-        return minTime;
+        if (entryCount == 0) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(minTime, 0, ZoneOffset.ofTotalSeconds(minTimeOffset));
     }
 
     public LocalDateTime getMaxTime() {
+        if (entryCount == 0) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(maxTime, 0, ZoneOffset.ofTotalSeconds(maxTimeOffset));
+    }
+
+    /**
+     * Время самой ранней записи в секундах от 1970-01-01T00:00:00Z, Long.MAX_VALUE без записей
+     */
+    public long getMinEpochSecond() {
+        return minTime;
+    }
+
+    /**
+     * Время самой поздней записи в секундах от 1970-01-01T00:00:00Z, Long.MIN_VALUE без записей
+     */
+    public long getMaxEpochSecond() {
         return maxTime;
     }
 
@@ -463,11 +800,7 @@ public class Statistics {
     }
 
     public int getUniqueHumanUsers() {
-        return humanUserIPs.size();
-    }
-
-    public Set<LogEntry> getLogEntries() {
-        return new HashSet<>(logEntries);
+        return humanUserIPs != null ? humanUserIPs.size() : (int) humanUserIPsSketch.estimate();
     }
 
     private String extractDomainFromReferer(String referer) {
@@ -528,20 +861,90 @@ public class Statistics {
 
         return url.toLowerCase();
     }
-    public int getPeakVisitsPerSecond() {
-        if (regularVisitsPerSecond.isEmpty()) {
-            return 0;
+    // при равенстве берётся меньший IP, чтобы результат не зависел от порядка добавления
+    private void updateMostActiveUser(long high, long low, int visits) {
+        if (visits > maxVisitsPerUser || (visits == maxVisitsPerUser && compareIp(high, low, mostActiveIpHigh, mostActiveIpLow) < 0)) {
+            maxVisitsPerUser = visits;
+            mostActiveIpHigh = high;
+            mostActiveIpLow = low;
+        }
+    }
+
+    private static int compareIp(long high, long low, long otherHigh, long otherLow) {
+        return IpAddress.compare(high, low, otherHigh, otherLow);
+    }
+
+    /**
+     * Запросы, ошибки, трафик и уникальные пользователи по минутам (последние statistics.minuteWindows минут)
+     */
+    public TimeWindowSeries getMinuteWindows() {
+        return minuteWindows;
+    }
+
+    /**
+     * То же по часам (последние statistics.hourWindows часов)
+     */
+    public TimeWindowSeries getHourWindows() {
+        return hourWindows;
+    }
+
+    /**
+     * Распределение размеров ответов по всем записям
+     */
+    public LogHistogram getResponseSizeHistogram() {
+        return responseSizes;
+    }
+
+    /**
+     * Распределение размеров ответов с кодами statusClass * 100 .. statusClass * 100 + 99 (statusClass от 1 до 5);
+     * 0 - коды вне 100-599
+     */
+    public LogHistogram getResponseSizeHistogram(int statusClass) {
+        if (statusClass < 0 || statusClass >= responseSizesByClass.length) {
+            throw new IllegalArgumentException("Неизвестный класс кода ответа: " + statusClass);
+        }
+        return responseSizesByClass[statusClass];
+    }
+
+    private static int statusClass(int responseCode) {
+        return responseCode >= 100 && responseCode < 600 ? responseCode / 100 : 0;
+    }
+
+    /**
+     * Распределение количества запросов в секунду по всем секундам от первой до последней записи,
+     * включая секунды без запросов. Строится по счётчикам секунд при каждом вызове
+     */
+    public LogHistogram getRequestsPerSecondHistogram() {
+        LogHistogram histogram = new LogHistogram();
+        regularVisitsPerSecond.forEach((second, count) -> histogram.record(count));
+        if (entryCount > 0) {
+            histogram.record(0, maxTime - minTime + 1 - regularVisitsPerSecond.size());
         }
+        return histogram;
+    }
 
-        // Находим максимальное значение
-        int maxVisits = 0;
-        for (int visits : regularVisitsPerSecond.values()) {
-            if (visits > maxVisits) {
-                maxVisits = visits;
+    /**
+     * Процентили размеров ответов (всего и по классам кода) и запросов в секунду
+     */
+    public String getDistributionStatistics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Распределение размеров ответов (байт):\n");
+        sb.append("  Все: ").append(responseSizes).append('\n');
+        for (int i = 1; i <= responseSizesByClass.length; i++) {
+            int statusClass = i % responseSizesByClass.length; // прочие коды - последними
+            if (responseSizesByClass[statusClass].getTotalCount() > 0) {
+                sb.append(statusClass == 0 ? "  Прочие коды: " : "  " + statusClass + "xx: ")
+                        .append(responseSizesByClass[statusClass]).append('\n');
             }
         }
+        sb.append("Распределение запросов в секунду:\n");
+        sb.append("  ").append(getRequestsPerSecondHistogram()).append('\n');
+        return sb.toString();
+    }
 
-        return maxVisits;
+    public int getPeakVisitsPerSecond() {
+        // максимум отслеживается при каждом добавлении
+        return regularVisitsPerSecond.getPeak();
     }
 
     /**
@@ -552,21 +955,11 @@ public class Statistics {
             return 0;
         }
 
-        int peakSecond = 0;
-        int maxVisits = 0;
-
-        for (Map.Entry<Integer, Integer> entry : regularVisitsPerSecond.entrySet()) {
-            if (entry.getValue() > maxVisits) {
-                maxVisits = entry.getValue();
-                peakSecond = entry.getKey();
-            }
-        }
-
-        return peakSecond;
+        return regularVisitsPerSecond.getPeakSecond();
     }
 
     /**
-     * Возвращает LocalDateTime пиковой посещаемости
+     * Возвращает LocalDateTime пиковой посещаемости в часовом поясе последней записи лога
      */
     public LocalDateTime getPeakSecondDateTime() {
         int peakSecond = getPeakSecondTimestamp();
@@ -574,15 +967,56 @@ public class Statistics {
             return null;
         }
 
-        return LocalDateTime.ofEpochSecond(peakSecond, 0, java.time.ZoneOffset.UTC);
+        return LocalDateTime.ofEpochSecond(peakSecond, 0, ZoneOffset.ofTotalSeconds(maxTimeOffset));
     }
 
     /**
      * Метод, возвращающий список сайтов, со страниц которых есть ссылки на текущий сайт
-     * Учитываются только referer от обычных браузеров (не ботов)
+     * Учитываются только referer от обычных браузеров (не ботов).
+     * В приближённом режиме список не сохраняется - IllegalStateException (количество - getRefererDomainsCount)
      */
     public Set<String> getRefererDomains() {
-        return new HashSet<>(regularRefererDomains);
+        if (config.isApproximate()) {
+            throw new IllegalStateException("Список доменов-источников недоступен в приближённом режиме");
+        }
+        return distinctValues(regularRefererDomainIds, regularRefererDomains, StringDictionary.domains());
+    }
+
+    /**
+     * Количество уникальных доменов-источников (в приближённом режиме - оценка)
+     */
+    public int getRefererDomainsCount() {
+        return countDistinct(regularRefererDomainIds, regularRefererDomains, regularRefererDomainsSketch);
+    }
+
+    public StatisticsConfig getConfig() {
+        return config;
+    }
+
+    private void addRefererDomain(int domainId, String domain) {
+        addDistinct(regularRefererDomainIds, regularRefererDomains, regularRefererDomainsSketch, domainId, domain);
+        topValues.get(TopDimension.REFERER_DOMAIN).offer(domain);
+    }
+
+    // значение учитывается по номеру из словаря, а без номера - строкой
+    private void addDistinct(IntIntHashMap ids, Set<String> values, HyperLogLog sketch, int id, String value) {
+        if (sketch != null) {
+            sketch.add(value);
+        } else if (id != StringDictionary.NO_ID) {
+            ids.increment(id, 1);
+        } else {
+            values.add(value);
+        }
+    }
+
+    private int countDistinct(IntIntHashMap ids, Set<String> values, HyperLogLog sketch) {
+        return sketch != null ? (int) sketch.estimate() : ids.size() + values.size();
+    }
+
+    private static Set<String> distinctValues(IntIntHashMap ids, Set<String> values, StringDictionary dictionary) {
+        Set<String> result = new HashSet<>(values);
+        ids.forEach((id, count) -> result.add(dictionary.get(id)));
+        return result;
     }
 
     /**
@@ -590,46 +1024,94 @@ public class Statistics {
      * Одним пользователем считается пользователь с одним и тем же IP-адресом, не являющийся ботом
      */
     public int getMaxVisitsPerUser() {
-        if (visitsPerRegularUser.isEmpty()) {
-            return 0;
-        }
-
-        int maxVisits = 0;
-        for (int visits : visitsPerRegularUser.values()) {
-            if (visits > maxVisits) {
-                maxVisits = visits;
-            }
+        if (visitsPerRegularUser == null) {
+            // в приближённом режиме - верхняя оценка по самому частому IP
+            List<SpaceSaving.HeavyHitter<String>> top = getTop(TopDimension.IP, 1);
+            return top.isEmpty() ? 0 : (int) top.get(0).getCount();
         }
-
-        return maxVisits;
+        return maxVisitsPerUser;
     }
 
     /**
      * Возвращает IP самого активного пользователя (не бота)
      */
     public String getMostActiveUserIp() {
-        if (visitsPerRegularUser.isEmpty()) {
-            return null;
+        if (visitsPerRegularUser == null) {
+            List<SpaceSaving.HeavyHitter<IpAddress>> top = topIps.top(1);
+            return top.isEmpty() ? null : top.get(0).getKey().toString();
+        }
+        return maxVisitsPerUser > 0 ? IpAddress.format(mostActiveIpHigh, mostActiveIpLow) : null;
+    }
+
+    /**
+     * Возвращает количество уникальных пользователей (не ботов)
+     */
+    public int getUniqueRegularUsersCount() {
+        if (visitsPerRegularUser == null) {
+            return (int) regularUserIPsSketch.estimate();
         }
+        return visitsPerRegularUser.size();
+    }
 
-        String mostActiveIp = null;
-        int maxVisits = 0;
+    /**
+     * Самые частые значения измерения: K из настроек, по убыванию частоты.
+     * Частота каждого значения гарантированно лежит в [count - error, count].
+     */
+    public List<SpaceSaving.HeavyHitter<String>> getTop(TopDimension dimension) {
+        return getTop(dimension, config.getTopK(dimension));
+    }
 
-        for (Map.Entry<String, Integer> entry : visitsPerRegularUser.entrySet()) {
-            if (entry.getValue() > maxVisits) {
-                maxVisits = entry.getValue();
-                mostActiveIp = entry.getKey();
+    public List<SpaceSaving.HeavyHitter<String>> getTop(TopDimension dimension, int k) {
+        if (dimension == TopDimension.IP) {
+            List<SpaceSaving.HeavyHitter<String>> result = new ArrayList<>();
+            for (SpaceSaving.HeavyHitter<IpAddress> hitter : topIps.top(k)) {
+                result.add(new SpaceSaving.HeavyHitter<>(hitter.getKey().toString(), hitter.getCount(), hitter.getError()));
             }
+            return result;
         }
+        return topValues.get(dimension).top(k);
+    }
+
+    public List<SpaceSaving.HeavyHitter<IpAddress>> getTopIps() {
+        return topIps.top(config.getTopK(TopDimension.IP));
+    }
+
+    public List<SpaceSaving.HeavyHitter<String>> getTopPaths() {
+        return getTop(TopDimension.PATH);
+    }
 
-        return mostActiveIp;
+    public List<SpaceSaving.HeavyHitter<String>> getTopNotFoundPaths() {
+        return getTop(TopDimension.NOT_FOUND_PATH);
+    }
+
+    public List<SpaceSaving.HeavyHitter<String>> getTopRefererDomains() {
+        return getTop(TopDimension.REFERER_DOMAIN);
+    }
+
+    public List<SpaceSaving.HeavyHitter<String>> getTopUserAgents() {
+        return getTop(TopDimension.USER_AGENT);
     }
 
     /**
-     * Возвращает количество уникальных пользователей (не ботов)
+     * Самые частые значения по всем измерениям
      */
-    public int getUniqueRegularUsersCount() {
-        return visitsPerRegularUser.size();
+    public String getTopStatistics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Самые частые значения:\n");
+        for (TopDimension dimension : TopDimension.values()) {
+            long maxError = dimension == TopDimension.IP ? topIps.getMaxError() : topValues.get(dimension).getMaxError();
+            sb.append(String.format("  %s (топ-%d, погрешность не более %d):\n",
+                    dimension.getDescription(), config.getTopK(dimension), maxError));
+            for (SpaceSaving.HeavyHitter<String> hitter : getTop(dimension)) {
+                if (hitter.getError() == 0) {
+                    sb.append(String.format("    %s: %d\n", hitter.getKey(), hitter.getCount()));
+                } else {
+                    sb.append(String.format("    %s: %d..%d\n",
+                            hitter.getKey(), hitter.getGuaranteedCount(), hitter.getCount()));
+                }
+            }
+        }
+        return sb.toString();
     }
 
     /**
@@ -659,17 +1141,52 @@ public class Statistics {
         return sb.toString();
     }
 
+    /**
+     * Последние минута и час (скользящие окна) и самые нагруженные минута и час из хранимых рядов
+     */
+    public String getWindowStatistics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Статистика по интервалам времени (все запросы):\n");
+        appendWindow(sb, "Последние 5 минут", minuteWindows, minuteWindows.getLatest(5 * 60));
+        appendWindow(sb, "Последний час", hourWindows, hourWindows.getLatest(3600));
+        appendWindow(sb, "Самая нагруженная минута", minuteWindows, busiest(minuteWindows));
+        appendWindow(sb, "Самый нагруженный час", hourWindows, busiest(hourWindows));
+        return sb.toString();
+    }
+
+    private static TimeWindowSeries.Bucket busiest(TimeWindowSeries series) {
+        TimeWindowSeries.Bucket busiest = null;
+        for (TimeWindowSeries.Bucket bucket : series.getBuckets()) {
+            if (busiest == null || bucket.getRequests() > busiest.getRequests()) {
+                busiest = bucket;
+            }
+        }
+        return busiest;
+    }
+
+    private static void appendWindow(StringBuilder sb, String title, TimeWindowSeries series,
+                                     TimeWindowSeries.Bucket bucket) {
+        if (bucket == null || bucket.getRequests() == 0) {
+            return;
+        }
+        sb.append(String.format("  %s (с %s): %d запросов, %.2f%% ошибок, %d байт, ~%d пользователей\n", title,
+                series.toDateTime(bucket.getStartEpochSecond()), bucket.getRequests(), bucket.getErrorRate() * 100,
+                bucket.getBytes(), bucket.getUniqueUsers()));
+    }
+
     /**
      * Полная статистика по реферерам от обычных браузеров
      */
     public String getRefererStatistics() {
         StringBuilder sb = new StringBuilder();
         sb.append("Статистика сайтов-источников (только от обычных браузеров):\n");
-        sb.append(String.format("  Количество уникальных доменов: %d\n", regularRefererDomains.size()));
+        sb.append(String.format("  Количество уникальных доменов: %d\n", getRefererDomainsCount()));
 
-        if (!regularRefererDomains.isEmpty()) {
+        if (config.isApproximate()) {
+            sb.append("  Список доменов недоступен в приближённом режиме\n");
+        } else if (getRefererDomainsCount() > 0) {
             sb.append("  Список доменов:\n");
-            List<String> sortedDomains = new ArrayList<>(regularRefererDomains);
+            List<String> sortedDomains = new ArrayList<>(getRefererDomains());
             Collections.sort(sortedDomains);
 
             for (String domain : sortedDomains) {
@@ -693,21 +1210,44 @@ public class Statistics {
 
         String mostActiveIp = getMostActiveUserIp();
         if (mostActiveIp != null) {
-            int visits = visitsPerRegularUser.get(mostActiveIp);
             sb.append(String.format("  Самый активный пользователь (IP): %s (%d посещений)\n",
-                    mostActiveIp, visits));
+                    mostActiveIp, getMaxVisitsPerUser()));
         }
 
         sb.append(String.format("  Уникальных пользователей (не ботов): %d\n", getUniqueRegularUsersCount()));
         sb.append(String.format("  Всего посещений от обычных пользователей: %d\n", regularBrowserRequests));
 
         // Топ-5 самых активных пользователей
-        if (!visitsPerRegularUser.isEmpty()) {
+        if (visitsPerRegularUser == null) {
+            List<SpaceSaving.HeavyHitter<String>> top = getTop(TopDimension.IP, 5);
+            if (!top.isEmpty()) {
+                sb.append("\n  Топ-5 самых активных пользователей (оценка):\n");
+            }
+            for (SpaceSaving.HeavyHitter<String> hitter : top) {
+                double percentage = regularBrowserRequests > 0 ?
+                        (double) hitter.getCount() / regularBrowserRequests * 100 : 0;
+                sb.append(String.format("    %s: %d посещений (%.1f%%)\n",
+                        hitter.getKey(), hitter.getCount(), percentage));
+            }
+        } else if (!visitsPerRegularUser.isEmpty()) {
             sb.append("\n  Топ-5 самых активных пользователей:\n");
 
-            visitsPerRegularUser.entrySet().stream()
-                    .sorted((a, b) -> Integer.compare(b.getValue(), a.getValue()))
-                    .limit(5)
+            // отбор пяти лучших кучей за один проход, без сортировки всех IP
+            Comparator<Map.Entry<IpAddress, Integer>> order = (a, b) -> a.getValue().equals(b.getValue())
+                    ? a.getKey().compareTo(b.getKey())
+                    : Integer.compare(b.getValue(), a.getValue());
+            PriorityQueue<Map.Entry<IpAddress, Integer>> top = new PriorityQueue<>(order.reversed());
+            visitsPerRegularUser.forEach((high, low, visits) -> {
+                if (top.size() == 5 && visits < top.peek().getValue()) {
+                    return; // не попадает в пятёрку, объект адреса не создаётся
+                }
+                top.add(new AbstractMap.SimpleEntry<>(new IpAddress(high, low), visits));
+                if (top.size() > 5) {
+                    top.poll();
+                }
+            });
+            top.stream()
+                    .sorted(order)
                     .forEach(entry -> {
                         double percentage = regularBrowserRequests > 0 ?
                                 (double) entry.getValue() / regularBrowserRequests * 100 : 0;
@@ -0,0 +1,109 @@
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Настройки сбора статистики.
+ * В точном режиме (по умолчанию) уникальные страницы, IP и домены хранятся во множествах.
+ * В приближённом режиме их количество оценивается скетчами HyperLogLog фиксированного размера,
+ * а сами списки значений не сохраняются.
+ * Для каждого измерения TopDimension задаётся K - сколько самых частых значений нужно в отчёте.
+ */
+public class StatisticsConfig {
+    public static final int DEFAULT_HLL_PRECISION = 12;
+    public static final int DEFAULT_TOP_K = 10;
+    // счётчиков Space-Saving на одно запрашиваемое значение: чем больше, тем меньше погрешность
+    private static final int COUNTERS_PER_TOP_ENTRY = 10;
+
+    private final boolean approximate;
+    private final int hllPrecision;
+    private final Map<TopDimension, Integer> topK;
+
+    private StatisticsConfig(boolean approximate, int hllPrecision, Map<TopDimension, Integer> topK) {
+        this.approximate = approximate;
+        this.hllPrecision = hllPrecision;
+        this.topK = topK;
+    }
+
+    public static StatisticsConfig exact() {
+        return new StatisticsConfig(false, DEFAULT_HLL_PRECISION, defaultTopK());
+    }
+
+    public static StatisticsConfig approximate(int hllPrecision) {
+        if (hllPrecision < 4 || hllPrecision > 18) {
+            throw new IllegalArgumentException("Точность HyperLogLog должна быть в диапазоне 4..18: " + hllPrecision);
+        }
+        return new StatisticsConfig(true, hllPrecision, defaultTopK());
+    }
+
+    /**
+     * Настройки из системных свойств statistics.approximate, statistics.hllPrecision
+     * и statistics.topK (одно K для всех измерений)
+     */
+    public static StatisticsConfig fromSystemProperties() {
+        StatisticsConfig config = exact();
+        if (Boolean.getBoolean("statistics.approximate")) {
+            config = approximate(Integer.getInteger("statistics.hllPrecision", DEFAULT_HLL_PRECISION));
+        }
+        int k = Integer.getInteger("statistics.topK", DEFAULT_TOP_K);
+        for (TopDimension dimension : TopDimension.values()) {
+            config = config.withTopK(dimension, k);
+        }
+        return config;
+    }
+
+    /**
+     * Копия настроек с другим K для измерения
+     */
+    public StatisticsConfig withTopK(TopDimension dimension, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("K должно быть положительным: " + k);
+        }
+        Map<TopDimension, Integer> copy = new EnumMap<>(topK);
+        copy.put(dimension, k);
+        return new StatisticsConfig(approximate, hllPrecision, copy);
+    }
+
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    public int getHllPrecision() {
+        return hllPrecision;
+    }
+
+    public int getTopK(TopDimension dimension) {
+        return topK.get(dimension);
+    }
+
+    /**
+     * Количество счётчиков Space-Saving для измерения
+     */
+    public int getTopKCapacity(TopDimension dimension) {
+        return getTopK(dimension) * COUNTERS_PER_TOP_ENTRY;
+    }
+
+    private static Map<TopDimension, Integer> defaultTopK() {
+        Map<TopDimension, Integer> topK = new EnumMap<>(TopDimension.class);
+        for (TopDimension dimension : TopDimension.values()) {
+            topK.put(dimension, DEFAULT_TOP_K);
+        }
+        return topK;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StatisticsConfig)) {
+            return false;
+        }
+        StatisticsConfig other = (StatisticsConfig) o;
+        return approximate == other.approximate && hllPrecision == other.hllPrecision && topK.equals(other.topK);
+    }
+
+    @Override
+    public int hashCode() {
+        return (Boolean.hashCode(approximate) * 31 + hllPrecision) * 31 + topK.hashCode();
+    }
+}
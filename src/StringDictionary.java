@@ -0,0 +1,206 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Словарь строк: каждой различной последовательности байтов назначается постоянный номер 0, 1, 2...
+ * Пути, referer и User-Agent в логе многократно повторяются, поэтому строка создаётся один раз
+ * на значение, а записи и статистика хранят только номера. Поиск идёт прямо по байтам строки лога
+ * через переиспользуемый ключ потока, без создания объектов при попадании.
+ * Размер словаря ограничен: когда он заполнен, новые значения не получают номер (NO_ID),
+ * и вызывающий код хранит их как обычные строки. Словарь потокобезопасен, номера не переиспользуются.
+ */
+public class StringDictionary {
+    public static final int NO_ID = -1;
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int DEFAULT_MAX_SIZE = 1 << 20;
+
+    private static final StringDictionary PATHS = sharedInstance();
+    private static final StringDictionary REFERERS = sharedInstance();
+    private static final StringDictionary USER_AGENTS = sharedInstance();
+    private static final StringDictionary DOMAINS = sharedInstance();
+
+    private static final ThreadLocal<Key> PROBE = ThreadLocal.withInitial(() -> new Key(new byte[256], 0, 0));
+
+    private final int maxSize;
+    private final ConcurrentHashMap<Key, Integer> ids = new ConcurrentHashMap<>();
+    // значения по номерам, страницами по PAGE_SIZE; страницы добавляются под блокировкой
+    private final String[][] strings;
+    private final byte[][][] bytes;
+    private volatile int size;
+    private volatile boolean full;
+    private final LongAdder spilled = new LongAdder();
+
+    public StringDictionary(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Размер словаря должен быть положительным: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        int pages = (maxSize + PAGE_SIZE - 1) >>> PAGE_BITS;
+        this.strings = new String[pages][];
+        this.bytes = new byte[pages][][];
+    }
+
+    private static StringDictionary sharedInstance() {
+        return new StringDictionary(Integer.getInteger("dictionary.maxSize", DEFAULT_MAX_SIZE));
+    }
+
+    /**
+     * Общие словари приложения; размер каждого задаётся свойством dictionary.maxSize
+     */
+    public static StringDictionary paths() {
+        return PATHS;
+    }
+
+    public static StringDictionary referers() {
+        return REFERERS;
+    }
+
+    public static StringDictionary userAgents() {
+        return USER_AGENTS;
+    }
+
+    public static StringDictionary domains() {
+        return DOMAINS;
+    }
+
+    /**
+     * Номер значения из buffer в диапазоне [from, to); новое значение добавляется в словарь.
+     * Возвращает NO_ID, если значения нет, а словарь заполнен.
+     */
+    public int idOf(ByteBuffer buffer, int from, int to) {
+        Key probe = PROBE.get();
+        int length = to - from;
+        if (probe.bytes.length < length) {
+            probe.bytes = new byte[Math.max(length, probe.bytes.length * 2)];
+        }
+        buffer.get(from, probe.bytes, 0, length);
+        probe.set(length);
+        return idOf(probe);
+    }
+
+    public int idOf(String value) {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        Key key = new Key(encoded, 0, 0);
+        key.set(encoded.length);
+        return idOf(key);
+    }
+
+    private int idOf(Key probe) {
+        Integer id = ids.get(probe);
+        if (id != null) {
+            return id;
+        }
+        if (full) {
+            spilled.increment();
+            return NO_ID;
+        }
+        synchronized (this) {
+            id = ids.get(probe);
+            if (id != null) {
+                return id;
+            }
+            int next = size;
+            if (next >= maxSize) {
+                full = true;
+                spilled.increment();
+                return NO_ID;
+            }
+            byte[] copy = Arrays.copyOf(probe.bytes, probe.length);
+            int page = next >>> PAGE_BITS;
+            if (strings[page] == null) {
+                strings[page] = new String[PAGE_SIZE];
+                bytes[page] = new byte[PAGE_SIZE][];
+            }
+            strings[page][next & (PAGE_SIZE - 1)] = new String(copy, StandardCharsets.UTF_8);
+            bytes[page][next & (PAGE_SIZE - 1)] = copy;
+            // сначала size (volatile), затем номер в ConcurrentHashMap: поток, нашедший номер без блокировки,
+            // уже видит и значение, и размер, поэтому get(id) не отвергает его в checkId
+            size = next + 1;
+            ids.put(new Key(copy, probe.length, probe.hash), next);
+            return next;
+        }
+    }
+
+    /**
+     * Строка по номеру, полученному из этого словаря
+     */
+    public String get(int id) {
+        checkId(id);
+        return strings[id >>> PAGE_BITS][id & (PAGE_SIZE - 1)];
+    }
+
+    /**
+     * Байты значения в UTF-8 по номеру (для записи в файл); массив изменять нельзя
+     */
+    public byte[] getBytes(int id) {
+        checkId(id);
+        return bytes[id >>> PAGE_BITS][id & (PAGE_SIZE - 1)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Сколько раз значение не получило номер из-за заполненного словаря
+     */
+    public long getSpilled() {
+        return spilled.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d из %d значений, без номера %d", size(), maxSize, getSpilled());
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("Нет значения с номером " + id);
+        }
+    }
+
+    // ключ таблицы: у сохранённых ключей массив точной длины, у ключа поиска - переиспользуемый буфер
+    private static final class Key {
+        private byte[] bytes;
+        private int length;
+        private int hash;
+
+        Key(byte[] bytes, int length, int hash) {
+            this.bytes = bytes;
+            this.length = length;
+            this.hash = hash;
+        }
+
+        void set(int length) {
+            this.length = length;
+            int h = 1;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + bytes[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && Arrays.equals(bytes, 0, length, other.bytes, 0, other.length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ряд показателей по интервалам времени фиксированной длины (минуты, часы):
+ * запросы, ошибки, трафик и уникальные пользователи (HyperLogLog малой точности).
+ * Интервалы лежат в кольцевом буфере на capacity ячеек, поэтому память не зависит от длины лога:
+ * с приходом более нового времени самые старые интервалы вытесняются.
+ * Записи не по порядку времени попадают в свой интервал, пока он ещё хранится;
+ * записи старше окна хранения только подсчитываются (getDropped).
+ */
+public class TimeWindowSeries {
+    static final int USERS_PRECISION = 8; // 256 байт на интервал, погрешность около 6.5%
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final int bucketSeconds;
+    private final int capacity;
+    private final long[] bucketIds; // номер интервала (секунда / bucketSeconds) в ячейке, EMPTY - ячейка пуста
+    private final long[] requests;
+    private final long[] errors;
+    private final long[] bytes;
+    private final HyperLogLog[] users; // создаётся при первом пользователе в интервале
+    private long newest = EMPTY; // номер самого нового интервала
+    private int offsetSeconds; // часовой пояс самой новой записи, для отображения времени
+    private long dropped;
+
+    public TimeWindowSeries(int bucketSeconds, int capacity) {
+        if (bucketSeconds < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Длина интервала и количество интервалов должны быть положительными");
+        }
+        this.bucketSeconds = bucketSeconds;
+        this.capacity = capacity;
+        this.bucketIds = new long[capacity];
+        this.requests = new long[capacity];
+        this.errors = new long[capacity];
+        this.bytes = new long[capacity];
+        this.users = new HyperLogLog[capacity];
+        Arrays.fill(bucketIds, EMPTY);
+    }
+
+    /**
+     * Учитывает запрос; userHash (хеш IP, см. IpAddress.hash) учитывается, только если user = true
+     */
+    public void add(long epochSecond, int offsetSeconds, boolean error, long dataSize, boolean user, long userHash) {
+        int slot = slot(Math.floorDiv(epochSecond, bucketSeconds), offsetSeconds);
+        if (slot < 0) {
+            return;
+        }
+        requests[slot]++;
+        if (error) {
+            errors[slot]++;
+        }
+        bytes[slot] += dataSize;
+        if (user) {
+            users(slot).addHash(userHash);
+        }
+    }
+
+    /**
+     * Добавляет интервалы other (с той же длиной интервала), например ряд, собранный другим потоком
+     */
+    public void merge(TimeWindowSeries other) {
+        if (other.bucketSeconds != bucketSeconds) {
+            throw new IllegalArgumentException("Нельзя объединить ряды с разной длиной интервала: "
+                    + bucketSeconds + " и " + other.bucketSeconds);
+        }
+        dropped += other.dropped;
+        for (int i = 0; i < other.capacity; i++) {
+            if (other.bucketIds[i] == EMPTY) {
+                continue;
+            }
+            long bucketId = other.bucketIds[i];
+            if (newest != EMPTY && bucketId <= newest - capacity) {
+                dropped += other.requests[i];
+                continue;
+            }
+            int slot = slot(bucketId, bucketId == other.newest ? other.offsetSeconds : offsetSeconds);
+            requests[slot] += other.requests[i];
+            errors[slot] += other.errors[i];
+            bytes[slot] += other.bytes[i];
+            if (other.users[i] != null) {
+                users(slot).merge(other.users[i]);
+            }
+        }
+    }
+
+    // ячейка интервала bucketId; при более новом интервале вытесняет старые, для слишком старого возвращает -1
+    private int slot(long bucketId, int entryOffsetSeconds) {
+        if (newest == EMPTY || bucketId > newest) {
+            newest = bucketId;
+            offsetSeconds = entryOffsetSeconds;
+        } else if (bucketId <= newest - capacity) {
+            dropped++;
+            return -1;
+        }
+        int slot = (int) Math.floorMod(bucketId, (long) capacity);
+        if (bucketIds[slot] != bucketId) {
+            // в ячейке вытесненный интервал (или ничего)
+            bucketIds[slot] = bucketId;
+            requests[slot] = 0;
+            errors[slot] = 0;
+            bytes[slot] = 0;
+            users[slot] = null;
+        }
+        return slot;
+    }
+
+    private HyperLogLog users(int slot) {
+        if (users[slot] == null) {
+            users[slot] = new HyperLogLog(USERS_PRECISION);
+        }
+        return users[slot];
+    }
+
+    /**
+     * Все хранимые интервалы от самого старого непустого до самого нового, включая пустые между ними
+     */
+    public List<Bucket> getBuckets() {
+        if (newest == EMPTY) {
+            return new ArrayList<>();
+        }
+        long oldest = newest;
+        for (long id = newest - capacity + 1; id < newest; id++) {
+            if (bucketIds[(int) Math.floorMod(id, (long) capacity)] == id) {
+                oldest = id;
+                break;
+            }
+        }
+        return getBuckets(oldest * bucketSeconds, (newest + 1) * bucketSeconds);
+    }
+
+    /**
+     * Интервалы, пересекающиеся с [fromEpochSecond, toEpochSecond), в порядке времени (фиксированные окна);
+     * вытесненные и ещё не наступившие интервалы не возвращаются
+     */
+    public List<Bucket> getBuckets(long fromEpochSecond, long toEpochSecond) {
+        List<Bucket> buckets = new ArrayList<>();
+        if (newest == EMPTY || toEpochSecond <= fromEpochSecond) {
+            return buckets;
+        }
+        long first = Math.max(Math.floorDiv(fromEpochSecond, bucketSeconds), newest - capacity + 1);
+        long last = Math.min(Math.floorDiv(toEpochSecond - 1, bucketSeconds), newest);
+        for (long id = first; id <= last; id++) {
+            int slot = (int) Math.floorMod(id, (long) capacity);
+            buckets.add(bucketIds[slot] == id
+                    ? new Bucket(id * bucketSeconds, bucketSeconds, requests[slot], errors[slot], bytes[slot],
+                    users[slot] != null ? users[slot].estimate() : 0)
+                    : new Bucket(id * bucketSeconds, bucketSeconds, 0, 0, 0, 0));
+        }
+        return buckets;
+    }
+
+    /**
+     * Сумма интервалов, пересекающихся с [fromEpochSecond, toEpochSecond); уникальные пользователи
+     * считаются по объединению скетчей, а не суммой
+     */
+    public Bucket aggregate(long fromEpochSecond, long toEpochSecond) {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        long totalRequests = 0;
+        long totalErrors = 0;
+        long totalBytes = 0;
+        HyperLogLog union = new HyperLogLog(USERS_PRECISION);
+        for (Bucket bucket : getBuckets(fromEpochSecond, toEpochSecond)) {
+            first = Math.min(first, bucket.startEpochSecond);
+            last = Math.max(last, bucket.startEpochSecond + bucketSeconds);
+            totalRequests += bucket.requests;
+            totalErrors += bucket.errors;
+            totalBytes += bucket.bytes;
+            int slot = (int) Math.floorMod(Math.floorDiv(bucket.startEpochSecond, bucketSeconds), (long) capacity);
+            if (bucket.requests > 0 && users[slot] != null) {
+                union.merge(users[slot]);
+            }
+        }
+        if (first == Long.MAX_VALUE) {
+            return new Bucket(fromEpochSecond, 0, 0, 0, 0, 0);
+        }
+        return new Bucket(first, (int) (last - first), totalRequests, totalErrors, totalBytes, union.estimate());
+    }
+
+    /**
+     * Скользящее окно: сумма последних seconds секунд (с округлением до целых интервалов),
+     * заканчивающихся самым новым интервалом; например, для проверки порогов частоты ошибок
+     */
+    public Bucket getLatest(int seconds) {
+        if (newest == EMPTY) {
+            return new Bucket(0, 0, 0, 0, 0, 0);
+        }
+        long end = (newest + 1) * bucketSeconds;
+        return aggregate(end - seconds, end);
+    }
+
+    /**
+     * Записывает непустые интервалы для контрольной точки (см. Checkpoint)
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(bucketSeconds);
+        out.writeInt(capacity);
+        out.writeLong(newest);
+        out.writeInt(offsetSeconds);
+        out.writeLong(dropped);
+        int stored = 0;
+        for (long id : bucketIds) {
+            if (id != EMPTY) {
+                stored++;
+            }
+        }
+        out.writeInt(stored);
+        for (int i = 0; i < capacity; i++) {
+            if (bucketIds[i] == EMPTY) {
+                continue;
+            }
+            out.writeLong(bucketIds[i]);
+            out.writeLong(requests[i]);
+            out.writeLong(errors[i]);
+            out.writeLong(bytes[i]);
+            out.writeBoolean(users[i] != null);
+            if (users[i] != null) {
+                users[i].writeTo(out);
+            }
+        }
+    }
+
+    public static TimeWindowSeries readFrom(DataInput in) throws IOException {
+        TimeWindowSeries series = new TimeWindowSeries(in.readInt(), in.readInt());
+        series.newest = in.readLong();
+        series.offsetSeconds = in.readInt();
+        series.dropped = in.readLong();
+        int stored = in.readInt();
+        for (int n = 0; n < stored; n++) {
+            long id = in.readLong();
+            int slot = (int) Math.floorMod(id, (long) series.capacity);
+            series.bucketIds[slot] = id;
+            series.requests[slot] = in.readLong();
+            series.errors[slot] = in.readLong();
+            series.bytes[slot] = in.readLong();
+            series.users[slot] = in.readBoolean() ? HyperLogLog.readFrom(in) : null;
+        }
+        return series;
+    }
+
+    public int getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Количество записей, не попавших в ряд: их интервал был уже вытеснен.
+     * Зависит от порядка записей (запись могла попасть в ряд и быть вытеснена позже),
+     * а содержимое хранимых интервалов - нет.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Время начала интервала в часовом поясе самой новой записи
+     */
+    public LocalDateTime toDateTime(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.ofTotalSeconds(offsetSeconds));
+    }
+
+    /**
+     * Показатели одного интервала или суммы нескольких интервалов
+     */
+    public static class Bucket {
+        private final long startEpochSecond;
+        private final int seconds;
+        private final long requests;
+        private final long errors;
+        private final long bytes;
+        private final long uniqueUsers;
+
+        Bucket(long startEpochSecond, int seconds, long requests, long errors, long bytes, long uniqueUsers) {
+            this.startEpochSecond = startEpochSecond;
+            this.seconds = seconds;
+            this.requests = requests;
+            this.errors = errors;
+            this.bytes = bytes;
+            this.uniqueUsers = uniqueUsers;
+        }
+
+        public long getStartEpochSecond() {
+            return startEpochSecond;
+        }
+
+        public int getSeconds() {
+            return seconds;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Оценка количества различных IP реальных пользователей (не ботов)
+         */
+        public long getUniqueUsers() {
+            return uniqueUsers;
+        }
+
+        public double getRequestsPerSecond() {
+            return seconds > 0 ? (double) requests / seconds : 0;
+        }
+
+        /**
+         * Доля ошибочных запросов (4xx и 5xx)
+         */
+        public double getErrorRate() {
+            return requests > 0 ? (double) errors / requests : 0;
+        }
+
+        public double getBytesPerSecond() {
+            return seconds > 0 ? (double) bytes / seconds : 0;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Быстрый разбор времени запроса фиксированного формата: 13/Dec/2024:10:15:32 +0300
+ * Цифры и месяц читаются прямо из байтов строки. Записи в логе идут почти по порядку,
+ * поэтому начало последней минуты кэшируется и для следующих строк той же минуты
+ * пересчитываются только секунды и смещение часового пояса.
+ * Экземпляр не потокобезопасен.
+ */
+public class TimestampDecoder {
+    static final int LENGTH = 26;
+    private static final int MINUTE_PREFIX = 17; // dd/MMM/yyyy:HH:mm
+    private static final String MONTHS = "janfebmaraprmayjunjulaugsepoctnovdec";
+
+    private final byte[] cachedMinute = new byte[MINUTE_PREFIX];
+    private boolean cached;
+    private long cachedMinuteEpoch; // начало минуты по местному времени, в секундах
+
+    private long epochSecond;
+    private int offsetSeconds;
+
+    /**
+     * Разбирает время в buffer в диапазоне [from, to).
+     * Возвращает false, если строка не соответствует формату.
+     */
+    public boolean decode(ByteBuffer buffer, int from, int to) {
+        if (to - from != LENGTH
+                || buffer.get(from + 2) != '/' || buffer.get(from + 6) != '/'
+                || buffer.get(from + 11) != ':' || buffer.get(from + 14) != ':'
+                || buffer.get(from + 17) != ':' || buffer.get(from + 20) != ' ') {
+            return false;
+        }
+        if (!isCachedMinute(buffer, from)) {
+            long minuteEpoch = decodeMinute(buffer, from);
+            if (minuteEpoch == Long.MIN_VALUE) {
+                return false;
+            }
+            for (int i = 0; i < MINUTE_PREFIX; i++) {
+                cachedMinute[i] = buffer.get(from + i);
+            }
+            cachedMinuteEpoch = minuteEpoch;
+            cached = true;
+        }
+        int second = twoDigits(buffer, from + 18);
+        if (second < 0 || second > 59) {
+            return false;
+        }
+
+        // смещение часового пояса: +hhmm или -hhmm
+        byte sign = buffer.get(from + 21);
+        int offsetHours = twoDigits(buffer, from + 22);
+        int offsetMinutes = twoDigits(buffer, from + 24);
+        if ((sign != '+' && sign != '-') || offsetHours < 0 || offsetHours > 18
+                || offsetMinutes < 0 || offsetMinutes > 59) {
+            return false;
+        }
+        int offset = offsetHours * 3600 + offsetMinutes * 60;
+        if (offset > 18 * 3600) {
+            return false;
+        }
+        offsetSeconds = sign == '-' ? -offset : offset;
+        epochSecond = cachedMinuteEpoch + second - offsetSeconds;
+        return true;
+    }
+
+    /**
+     * Момент времени в секундах от 1970-01-01T00:00:00Z с учётом часового пояса
+     */
+    public long getEpochSecond() {
+        return epochSecond;
+    }
+
+    /**
+     * Смещение часового пояса записи в секундах
+     */
+    public int getOffsetSeconds() {
+        return offsetSeconds;
+    }
+
+    private boolean isCachedMinute(ByteBuffer buffer, int from) {
+        if (!cached) {
+            return false;
+        }
+        // минуты и часы меняются чаще всего, поэтому сравниваем с конца
+        for (int i = MINUTE_PREFIX - 1; i >= 0; i--) {
+            if (cachedMinute[i] != buffer.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // начало минуты по местному времени в секундах или Long.MIN_VALUE при ошибке
+    private static long decodeMinute(ByteBuffer buffer, int from) {
+        int day = twoDigits(buffer, from);
+        int month = month(buffer, from + 3);
+        int year = twoDigits(buffer, from + 7);
+        int yearLow = twoDigits(buffer, from + 9);
+        int hour = twoDigits(buffer, from + 12);
+        int minute = twoDigits(buffer, from + 15);
+        if (month < 0 || year < 0 || yearLow < 0 || hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return Long.MIN_VALUE;
+        }
+        year = year * 100 + yearLow;
+        if (day < 1 || day > daysInMonth(year, month)) {
+            return Long.MIN_VALUE;
+        }
+        return epochDay(year, month, day) * 86400 + hour * 3600 + minute * 60;
+    }
+
+    // номер месяца 1..12 по английскому сокращению или -1
+    private static int month(ByteBuffer buffer, int p) {
+        char a = (char) (buffer.get(p) | 0x20);
+        char b = (char) (buffer.get(p + 1) | 0x20);
+        char c = (char) (buffer.get(p + 2) | 0x20);
+        for (int i = 0; i < MONTHS.length(); i += 3) {
+            if (MONTHS.charAt(i) == a && MONTHS.charAt(i + 1) == b && MONTHS.charAt(i + 2) == c) {
+                return i / 3 + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int twoDigits(ByteBuffer buffer, int p) {
+        int high = buffer.get(p) - '0';
+        int low = buffer.get(p + 1) - '0';
+        if (high < 0 || high > 9 || low < 0 || low > 9) {
+            return -1;
+        }
+        return high * 10 + low;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // количество дней от 1970-01-01 (алгоритм days_from_civil)
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
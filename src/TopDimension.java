@@ -0,0 +1,20 @@
+/**
+ * Измерения, по которым собираются самые частые значения (top-K)
+ */
+public enum TopDimension {
+    IP("IP-адреса"),
+    PATH("Страницы"),
+    NOT_FOUND_PATH("Несуществующие страницы (404)"),
+    REFERER_DOMAIN("Домены-источники"),
+    USER_AGENT("User-Agent");
+
+    private final String description;
+
+    TopDimension(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
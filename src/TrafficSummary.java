@@ -0,0 +1,72 @@
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Быстрая сводка по логу: количество запросов, ошибок (4xx и 5xx) и трафик.
+ * Нужны только код ответа и размер, поэтому строки разбираются до размера ответа (см. ParallelLogAnalyzer.scan);
+ * строки с некорректным временем или испорченные после размера считаются корректными.
+ */
+public class TrafficSummary implements ParallelLogAnalyzer.FieldAggregator<TrafficSummary> {
+    public static final Set<LogField> FIELDS = EnumSet.of(LogField.STATUS, LogField.SIZE);
+
+    private long lines;
+    private long requests;
+    private long errors;
+    private long bytes;
+    private final ParseFailures failures = new ParseFailures();
+
+    @Override
+    public void accept(LogLineParser parser) {
+        lines++;
+        requests++;
+        if (parser.getResponseCode() >= 400 && parser.getResponseCode() < 600) {
+            errors++;
+        }
+        bytes += parser.getDataSize();
+    }
+
+    @Override
+    public void reject(ParseResult reason) {
+        lines++;
+        failures.add(reason);
+    }
+
+    @Override
+    public void merge(TrafficSummary other) {
+        lines += other.lines;
+        requests += other.requests;
+        errors += other.errors;
+        bytes += other.bytes;
+        failures.merge(other.failures);
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Отвергнутые строки по причинам
+     */
+    public ParseFailures getFailures() {
+        return failures;
+    }
+
+    /**
+     * Доля ошибочных запросов
+     */
+    public double getErrorRate() {
+        return requests > 0 ? (double) errors / requests : 0;
+    }
+}
@@ -1,150 +1,146 @@
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.List;
 
-import static java.util.Arrays.stream;
-
-public class UserAgent {
+/**
+ * Разобранный User-Agent. Объект неизменяем и может разделяться между записями и потоками
+ */
+public final class UserAgent {
     private final String osType;
     private final String browserType;
     private final String originalUserAgentString;
     private final boolean isBot;
+    private final int agentType;
+
+    // типы клиентов (getAgentTypeIndex) в порядке вывода в отчёте
+    public static final int AGENT_REGULAR_BROWSER = 0;
+    public static final int AGENT_BOT = 1;
+    public static final int AGENT_OTHER = 2;
+    private static final String[] AGENT_TYPE_NAMES = {"Regular Browser", "Bot", "Unknown/Other Client"};
+
+    // метки ключевых слов автомата
+    private static final int WINDOWS = 0;
+    private static final int MAC_OS = 1;
+    private static final int LINUX = 2;
+    private static final int ANDROID = 3;
+    private static final int IOS = 4;
+    private static final int EDGE = 5;
+    private static final int FIREFOX = 6;
+    private static final int CHROME = 7;
+    private static final int CHROMIUM = 8;
+    private static final int SAFARI = 9;
+    private static final int OPERA = 10;
+    private static final int BOT = 11;
+
+    // Признаки бота: "bot" без буквы после него (googlebot/2.1, semrushbot;, bot) или "/bot".
+    // Так отлавливаются "googlebot", "semrushbot", "ahrefsbot", "bingbot", но не "robots" или "botanical".
+    // Список можно переопределить свойством useragent.botKeywords (через запятую, '|' - граница слова)
+    private static final String DEFAULT_BOT_KEYWORDS = "bot|,/bot";
+
+    private static final KeywordAutomaton KEYWORDS = buildKeywords(
+            System.getProperty("useragent.botKeywords", DEFAULT_BOT_KEYWORDS));
 
     public UserAgent(String userAgentString) {
         this.originalUserAgentString = userAgentString;
-        this.osType = parseOperatingSystem(userAgentString);
-        this.browserType = parseBrowser(userAgentString);
-        this.isBot = containsBotKeyword(userAgentString);
-    }
-    private boolean containsBotKeyword(String userAgentString) {
         if (userAgentString == null || userAgentString.isEmpty()) {
-            return false;
+            this.osType = "Unknown";
+            this.browserType = "Unknown";
+            this.isBot = false;
+            this.agentType = AGENT_OTHER;
+            return;
+        }
+        // один проход автомата по строке вместо отдельного поиска каждого слова
+        long found = KEYWORDS.match(userAgentString);
+        this.osType = parseOperatingSystem(found);
+        this.browserType = parseBrowser(found);
+        this.isBot = has(found, BOT);
+        if (isBot) {
+            this.agentType = AGENT_BOT;
+        } else if (browserType.equals("Unknown") || browserType.equals("Other")) {
+            this.agentType = AGENT_OTHER;
+        } else {
+            this.agentType = AGENT_REGULAR_BROWSER;
         }
-
-        String ua = userAgentString.toLowerCase();
-
-        // Проверяем наличие слова "bot" как отдельного слова или части слова
-        // Чтобы избежать ложных срабатываний (например, "robot" в описании браузера)
-        // Можно использовать регулярное выражение для более точного поиска
-
-        // Простой поиск подстроки "bot"
-        // return ua.contains("bot");
-
-        // Более точный поиск: "bot" как отдельное слово или с дефисом перед ним
-        // Это позволит отловить: "googlebot", "semrushbot", "ahrefsbot", "bingbot" и т.д.
-        // Игнорируем случаи вроде "robot" или "botanical"
-        return ua.matches(".*\\bbot\\b.*") ||
-                ua.matches(".*bot[^a-z].*") ||
-                ua.matches(".*bot$") ||
-                ua.contains("/bot") ||
-                ua.contains("bot/");
     }
 
-    // Альтернативная, более строгая проверка только по слову "bot"
-    private boolean isBotByWord(String userAgentString) {
-        if (userAgentString == null || userAgentString.isEmpty()) {
-            return false;
+    private static KeywordAutomaton buildKeywords(String botKeywords) {
+        List<String> keywords = new ArrayList<>();
+        List<Integer> tags = new ArrayList<>();
+        String[][] fixed = {
+                {"windows"}, {"mac os", "macos"}, {"linux"}, {"android"}, {"ios", "iphone"},
+                {"edg/", "edge/"}, {"firefox", "fxios"}, {"chrome"}, {"chromium"}, {"safari"}, {"opera", "opr/"}
+        };
+        for (int tag = 0; tag < fixed.length; tag++) {
+            for (String keyword : fixed[tag]) {
+                keywords.add(keyword);
+                tags.add(tag);
+            }
         }
-
-        String ua = userAgentString.toLowerCase();
-
-        // Разбиваем строку на слова и ищем точное совпадение "bot"
-        String[] words = ua.split("[\\W_]+"); // Разделяем по не-буквенным символам
-        for (String word : words) {
-            if (word.equals("bot")) {
-                return true;
+        for (String keyword : botKeywords.split(",")) {
+            if (!keyword.trim().isEmpty()) {
+                keywords.add(keyword.trim());
+                tags.add(BOT);
             }
         }
+        return new KeywordAutomaton(keywords, tags.stream().mapToInt(Integer::intValue).toArray());
+    }
 
-        // Также проверяем комбинации вроде "Googlebot", "SemrushBot" и т.д.
-        return ua.contains("googlebot") ||
-                ua.contains("bingbot") ||
-                ua.contains("yandexbot") ||
-                ua.contains("semrushbot") ||
-                ua.contains("ahrefsbot") ||
-                ua.contains("mj12bot") ||
-                ua.contains("dotbot");
+    private static boolean has(long found, int tag) {
+        return (found & (1L << tag)) != 0;
     }
 
     public boolean isBot() {
         return isBot;
     }
-    private String parseOperatingSystem(String userAgentString) {
-        if (userAgentString == null || userAgentString.isEmpty()) {
-            return "Unknown";
-        }
-        String ua = userAgentString.toLowerCase();
-        if (ua.contains("windows")) {
+    private static String parseOperatingSystem(long found) {
+        if (has(found, WINDOWS)) {
             return "Windows";
-        } else if (ua.contains("mac os") || ua.contains("macos")) {
+        } else if (has(found, MAC_OS)) {
             return "macOS";
-        } else if (ua.contains("linux")) {
+        } else if (has(found, LINUX)) {
             return "Linux";
-        } else if (ua.contains("android")) {
+        } else if (has(found, ANDROID)) {
             return "Android";
-        } else if (ua.contains("ios") || ua.contains("iphone")) {
+        } else if (has(found, IOS)) {
             return "iOS";
         } else {
             return "Other";
         }
     }
-    private String parseBrowser(String userAgentString) {
-        if (userAgentString == null || userAgentString.isEmpty()) {
-            return "Unknown";
-        }
-        String ua = userAgentString.toLowerCase();
-        if (ua.contains("edg/") || ua.contains("edge/")) {
+    private static String parseBrowser(long found) {
+        if (has(found, EDGE)) {
             return "Edge";
-        } else if (ua.contains("firefox") || ua.contains("fxios")) {
+        } else if (has(found, FIREFOX)) {
             return "Firefox";
-        } else if (ua.contains("chrome") && !ua.contains("chromium")) {
+        } else if (has(found, CHROME) && !has(found, CHROMIUM)) {
             return "Chrome";
-        } else if (ua.contains("safari") && !ua.contains("chrome")) {
+        } else if (has(found, SAFARI) && !has(found, CHROME)) {
             return "Safari";
-        } else if (ua.contains("opera") || ua.contains("opr/")) {
+        } else if (has(found, OPERA)) {
             return "Opera";
         } else {
             return "Other";
         }
     }
-    private boolean isBot(String userAgentString) {
-        if (userAgentString == null || userAgentString.isEmpty()) {
-            return false;
-        }
-
-        String ua = userAgentString.toLowerCase();
-
-        // Набор ключевых слов, характерных для ботов
-        Set<String> botKeywords = Stream.of(
-                "bot", "crawler", "spider", "scraper", "fetcher",
-                "googlebot", "bingbot", "yandexbot", "duckduckbot",
-                "baiduspider", "sogou", "exabot", "facebot",
-                "ia_archiver", "semrushbot", "ahrefsbot", "mj12bot",
-                "dotbot", "mail.ru", "discordbot", "twitterbot",
-                "facebookexternalhit", "linkedinbot", "slackbot",
-                "telegrambot", "whatsapp", "python-requests",
-                "java", "curl", "wget", "apache-httpclient",
-                "okhttp", "go-http-client", "node-fetch",
-                "libwww-perl", "http", "https", "feedfetcher",
-                "monitor", "checker", "validator", "analyzer",
-                "indexer", "search", "archive", "poller",
-                "collector", "harvester", "gatherer", "extractor"
-        ).collect(Collectors.toSet());
-
-        // Проверяем наличие любого из ключевых слов в User-Agent
-        return botKeywords.stream().anyMatch(ua::contains);
-    }
     public boolean isRegularBrowser() {
         return !isBot;
     }
     public String getAgentType() {
-        if (isBot) {
-            return "Bot";
-        } else if (browserType.equals("Unknown") || browserType.equals("Other")) {
-            return "Unknown/Other Client";
-        } else {
-            return "Regular Browser";
-        }
+        return AGENT_TYPE_NAMES[agentType];
+    }
+
+    /**
+     * Тип клиента как номер AGENT_* (для счётчиков без строк)
+     */
+    public int getAgentTypeIndex() {
+        return agentType;
+    }
+
+    public static int agentTypeCount() {
+        return AGENT_TYPE_NAMES.length;
+    }
+
+    public static String agentTypeName(int index) {
+        return AGENT_TYPE_NAMES[index];
     }
     public String getOsType() {
         return osType;
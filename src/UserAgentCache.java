@@ -0,0 +1,111 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограниченный кэш разобранных User-Agent по исходной строке.
+ * Различных User-Agent в логах немного, поэтому классификация выполняется
+ * один раз на строку агента, а не на каждый запрос. Кэш разделён на сегменты
+ * с собственной блокировкой, чтобы параллельные потоки разбора не мешали друг другу;
+ * внутри сегмента вытесняется давно не использованная запись (LRU).
+ */
+public class UserAgentCache {
+    private static final int SEGMENTS = 16;
+    // слишком маленький размер из свойства поднимается до минимума, а не ломает инициализацию класса
+    private static final UserAgentCache SHARED =
+            new UserAgentCache(Math.max(SEGMENTS, Integer.getInteger("useragent.cache.size", 16384)));
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public UserAgentCache(int capacity) {
+        if (capacity < SEGMENTS) {
+            throw new IllegalArgumentException("Размер кэша должен быть не меньше " + SEGMENTS + ": " + capacity);
+        }
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity / SEGMENTS);
+        }
+    }
+
+    /**
+     * Общий кэш приложения; размер задаётся свойством useragent.cache.size (не меньше количества сегментов)
+     */
+    public static UserAgentCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Возвращает общий неизменяемый UserAgent для строки, разбирая её только при промахе
+     */
+    public UserAgent get(String userAgentString) {
+        int hash = userAgentString.hashCode();
+        Segment segment = segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+        UserAgent userAgent;
+        synchronized (segment) {
+            userAgent = segment.get(userAgentString);
+        }
+        if (userAgent != null) {
+            hits.increment();
+            return userAgent;
+        }
+        misses.increment();
+        // разбор вне блокировки; при гонке два потока получат одинаковые объекты
+        userAgent = new UserAgent(userAgentString);
+        synchronized (segment) {
+            UserAgent existing = segment.putIfAbsent(userAgentString, userAgent);
+            return existing != null ? existing : userAgent;
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        long hitCount = getHits();
+        long total = hitCount + getMisses();
+        return String.format("Кэш User-Agent: %d записей, попаданий %d (%.2f%%), промахов %d, вытеснено %d",
+                size(), hitCount, total > 0 ? (double) hitCount / total * 100 : 0, getMisses(), getEvictions());
+    }
+
+    private class Segment extends LinkedHashMap<String, UserAgent> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UserAgent> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}